@@ -31,6 +31,7 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.run.analysis.AnalysisCache;
 import org.matsim.run.prepare.PrepareNetwork;
 import org.matsim.run.scenarios.LausitzScenario;
 import org.matsim.simwrapper.Dashboard;
@@ -74,6 +75,8 @@ public final class LausitzSimWrapperRunner implements MATSimAppCommand {
 	private boolean ptLine;
 	@CommandLine.Option(names = "--drt", defaultValue = "false", description = "create lausitz drt dashboard")
 	private boolean drt;
+	@CommandLine.Option(names = "--force", defaultValue = "false", description = "re-run all cached analyses, even if their inputs have not changed")
+	private boolean force;
 
 	private static final String FILE_TYPE = "_before_emissions.xml";
 
@@ -96,6 +99,12 @@ public final class LausitzSimWrapperRunner implements MATSimAppCommand {
 		for (Path runDirectory : inputPaths) {
 			log.info("Running on {}", runDirectory);
 
+			if (force) {
+//				analyses skip their execution if the fingerprint of their inputs has not changed, thus fingerprints are deleted
+				int deleted = AnalysisCache.clear(runDirectory.resolve("analysis"));
+				log.info("Deleted {} analysis fingerprints in {}", deleted, runDirectory);
+			}
+
 			String configPath = ApplicationUtils.matchInput("config.xml", runDirectory).toString();
 			Config config = ConfigUtils.loadConfig(configPath);
 			SimWrapper sw = SimWrapper.create(config);
@@ -1,6 +1,8 @@
 package org.matsim.drt;
 
 import com.google.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
@@ -17,70 +19,118 @@ import org.matsim.core.config.groups.ScoringConfigGroup;
 import org.matsim.core.router.StageActivityTypeIdentifier;
 import org.matsim.pt.PtConstants;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Modified based on the ChainedPtFareHandler from matsim-lib.
+ * Departure and arrival coordinates are stored in arrays indexed by {@link Id#index()} of the person.
+ * Fares are memoized per pair of departure and arrival coordinate. These are the coordinates of pt stops or drt interaction
+ * activities, so there are only few distinct pairs and the cached fare is exactly the one the calculator would return.
+ * Person state is sharded by person, see {@link PersonShards}, and the fare cache by coordinates, so that events can be delivered concurrently.
  */
 public class ChainedPtAndDrtFareHandler implements PtFareHandler {
-	@Inject
-	private EventsManager events;
+	private static final Logger log = LogManager.getLogger(ChainedPtAndDrtFareHandler.class);
+
 	public static final String DRT_INTERACTION = ScoringConfigGroup.createStageActivityType(TransportMode.drt);
 	public static final String DRT_OR_PT_FARE = "drt or drt-pt intermodal fare";
 
-	private final Map<Id<Person>, Coord> personDepartureCoordMap = new HashMap<>();
-	private final Map<Id<Person>, Coord> personArrivalCoordMap = new HashMap<>();
-	private final Set<Id<Person>> personsInvolvedInDrtTrip = new HashSet<>();
+	static final int MAX_CACHED_FARES = 100_000;
+	static final int FARE_CACHE_SHARDS = 16;
+
+	private final EventsManager events;
+	private final PtFareCalculator fareCalculator;
+
+	private final PersonShards<TripShard> trips = new PersonShards<>(TripShard::new);
+	private final FareCache[] fareCaches = new FareCache[FARE_CACHE_SHARDS];
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final AtomicBoolean missingCoordWarned = new AtomicBoolean();
 
 	@Inject
-	private ChainedPtFareCalculator fareCalculator;
+	public ChainedPtAndDrtFareHandler(EventsManager events, ChainedPtFareCalculator fareCalculator) {
+		this(events, (PtFareCalculator) fareCalculator);
+	}
+
+	ChainedPtAndDrtFareHandler(EventsManager events, PtFareCalculator fareCalculator) {
+		this.events = events;
+		this.fareCalculator = fareCalculator;
+		for (int i = 0; i < fareCaches.length; i++) {
+			fareCaches[i] = new FareCache();
+		}
+	}
 
 	@Override
 	public void handleEvent(ActivityStartEvent event) {
 		String eventType = event.getActType();
+		int personIndex = event.getPersonId().index();
+		int index = PersonShards.localIndex(personIndex);
+		TripShard shard = trips.get(personIndex);
+
+		CoordPair coords;
+		boolean involvedInDrtTrip;
+		synchronized (shard) {
+			if (eventType.equals(PtConstants.TRANSIT_ACTIVITY_TYPE) || eventType.equals(DRT_INTERACTION)) {
+				Coord coord = event.getCoord();
+				if (coord == null) {
+					if (!missingCoordWarned.getAndSet(true)) {
+						log.warn("Activity {} of person {} has no coordinate, the fare of the trip cannot be calculated and is not charged. " +
+							"Further trips without coordinate are skipped without warning.", eventType, event.getPersonId());
+					}
+					shard.tripsWithoutCoord.set(index);
+				} else {
+					shard.ensureCapacity(index);
+
+					if (!shard.personsOnPtTrip.get(index)) {
+						// The departure place is fixed to the place of
+						// first pt interaction an agent has in the whole leg
+						shard.personsOnPtTrip.set(index);
+						shard.departureX[index] = coord.getX();
+						shard.departureY[index] = coord.getY();
+					}
+
+					// The arrival stop will keep updating until the agent start a real
+					// activity (i.e. finish the leg)
+					shard.arrivalX[index] = coord.getX();
+					shard.arrivalY[index] = coord.getY();
+				}
+
+				if (eventType.equals(DRT_INTERACTION)) {
+					shard.personsInvolvedInDrtTrip.set(index);
+				}
+			}
 
-		if (eventType.equals(PtConstants.TRANSIT_ACTIVITY_TYPE) || eventType.equals(DRT_INTERACTION)) {
-			personDepartureCoordMap.computeIfAbsent(event.getPersonId(), c -> event.getCoord());
-			// The departure place is fixed to the place of
-			// first pt interaction an agent has in the whole leg
-
-			personArrivalCoordMap.put(event.getPersonId(), event.getCoord());
-			// The arrival stop will keep updating until the agent start a real
-			// activity (i.e. finish the leg)
-
-			if (eventType.equals(DRT_INTERACTION)) {
-				personsInvolvedInDrtTrip.add(event.getPersonId() );
+			if (StageActivityTypeIdentifier.isStageActivity(event.getActType())) {
+				return;
 			}
-		}
+			// if we have made it to here, it means that the agent is now at a "real" activity
 
-		if (StageActivityTypeIdentifier.isStageActivity(event.getActType())) {
-			return;
-		}
-		// if we have made it to here, it means that the agent is now at a "real" activity
+			boolean onPtTrip = shard.personsOnPtTrip.get(index);
+			boolean withoutCoord = shard.tripsWithoutCoord.get(index);
+			involvedInDrtTrip = shard.personsInvolvedInDrtTrip.get(index);
 
-		Id<Person> personId = event.getPersonId();
+			shard.personsOnPtTrip.clear(index);
+			shard.personsInvolvedInDrtTrip.clear(index);
+			shard.tripsWithoutCoord.clear(index);
 
-		// check if the person has arrived at the real activity by pt; otherwise return:
-		if (!personDepartureCoordMap.containsKey(personId)) {
-			return;
-		}
+			// check if the person has arrived at the real activity by pt and the fare is known; otherwise return:
+			if (!onPtTrip || withoutCoord) {
+				return;
+			}
 
-		Coord from = personDepartureCoordMap.get(personId);
-		Coord to = personArrivalCoordMap.get(personId);
+			coords = new CoordPair(shard.departureX[index], shard.departureY[index], shard.arrivalX[index], shard.arrivalY[index]);
+		}
 
-		PtFareCalculator.FareResult fare = fareCalculator.calculateFare(from, to).orElseThrow();
+		PtFareCalculator.FareResult fare = getFare(coords);
 
-		// charge fare to the person
+		// charge fare to the person, outside the lock of the shard, because the event is passed on to other handlers immediately
 		events.processEvent(new PersonMoneyEvent(event.getTime(), event.getPersonId(), -fare.fare(),
-			personsInvolvedInDrtTrip.contains(personId )? DRT_OR_PT_FARE : PtFareConfigGroup.PT_FARE,
+			involvedInDrtTrip ? DRT_OR_PT_FARE : PtFareConfigGroup.PT_FARE,
 			fare.transactionPartner(), event.getPersonId().toString()));
-
-		personDepartureCoordMap.remove(personId);
-		personArrivalCoordMap.remove(personId);
-		personsInvolvedInDrtTrip.remove(personId );
 	}
 
 	@Override
@@ -90,8 +140,91 @@ public class ChainedPtAndDrtFareHandler implements PtFareHandler {
 
 	@Override
 	public void reset(int iteration) {
-		personArrivalCoordMap.clear();
-		personDepartureCoordMap.clear();
-		personsInvolvedInDrtTrip.clear();
+		long hits = cacheHits.sumThenReset();
+		long misses = cacheMisses.sumThenReset();
+		if (hits + misses > 0) {
+			log.info("Fare cache: {} hits, {} misses, hit rate {}%", hits, misses, Math.round(100. * hits / (hits + misses)));
+		}
+
+		for (int i = 0; i < PersonShards.NUMBER_OF_SHARDS; i++) {
+			TripShard shard = trips.getShard(i);
+			synchronized (shard) {
+				shard.personsOnPtTrip.clear();
+				shard.personsInvolvedInDrtTrip.clear();
+				shard.tripsWithoutCoord.clear();
+			}
+		}
+	}
+
+	private PtFareCalculator.FareResult getFare(CoordPair coords) {
+		FareCache cache = getFareCache(coords);
+		PtFareCalculator.FareResult fare;
+		synchronized (cache) {
+			fare = cache.get(coords);
+		}
+		if (fare != null) {
+			cacheHits.increment();
+			return fare;
+		}
+
+		cacheMisses.increment();
+		fare = fareCalculator.calculateFare(new Coord(coords.fromX(), coords.fromY()), new Coord(coords.toX(), coords.toY())).orElseThrow();
+		synchronized (cache) {
+			cache.put(coords, fare);
+		}
+		return fare;
+	}
+
+	/**
+	 * Shard of the fare cache for the given coordinates, selected by their hash. The higher bits are mixed in, because the hash of
+	 * coordinates on a regular grid differs mostly there.
+	 */
+	private FareCache getFareCache(CoordPair coords) {
+		int hash = coords.hashCode();
+		return fareCaches[(hash ^ (hash >>> 16)) & (FARE_CACHE_SHARDS - 1)];
+	}
+
+	/**
+	 * Pt trips of the persons of one shard.
+	 */
+	private static final class TripShard {
+		private double[] departureX = new double[0];
+		private double[] departureY = new double[0];
+		private double[] arrivalX = new double[0];
+		private double[] arrivalY = new double[0];
+		private final BitSet personsOnPtTrip = new BitSet();
+		private final BitSet personsInvolvedInDrtTrip = new BitSet();
+//		trips with a pt or drt interaction without coordinate, which are not charged
+		private final BitSet tripsWithoutCoord = new BitSet();
+
+		private void ensureCapacity(int index) {
+			if (index >= departureX.length) {
+				int length = Math.max(index + 1, Math.max(PersonShards.localIndex(Id.getNumberOfIds(Person.class)) + 1, departureX.length * 2));
+				departureX = Arrays.copyOf(departureX, length);
+				departureY = Arrays.copyOf(departureY, length);
+				arrivalX = Arrays.copyOf(arrivalX, length);
+				arrivalY = Arrays.copyOf(arrivalY, length);
+			}
+		}
+	}
+
+	/**
+	 * One shard of the fare cache, the least recently used fares are removed if it is full.
+	 */
+	private static final class FareCache extends LinkedHashMap<CoordPair, PtFareCalculator.FareResult> {
+		private FareCache() {
+			super(1024, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CoordPair, PtFareCalculator.FareResult> eldest) {
+			return size() > MAX_CACHED_FARES / FARE_CACHE_SHARDS;
+		}
+	}
+
+	/**
+	 * Departure and arrival coordinate of a trip, key of the fare cache.
+	 */
+	private record CoordPair(double fromX, double fromY, double toX, double toY) {
 	}
 }
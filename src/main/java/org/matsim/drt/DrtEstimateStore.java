@@ -0,0 +1,260 @@
+package org.matsim.drt;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.drt.estimator.impl.trip_estimation.RideDurationEstimator;
+import org.matsim.contrib.drt.estimator.impl.waiting_time_estimation.WaitingTimeEstimator;
+import org.matsim.contrib.drt.routing.DrtRoute;
+import org.matsim.utils.ShpZoneIndex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed inputs of the drt estimator: typical wait time by link and ride time parameters by zone pair.
+ * Every link belongs to the smallest zone of the service area shape file enclosing its to-node, as stored in the {@link DrtLinkZoneTable},
+ * links outside of all zones share one additional zone.
+ * The ride time of a trip is estimated as alpha * direct ride time + beta of its origin and destination zone. By default, all zone pairs use the same alpha and beta.
+ * Zones with the attributes ride_alpha and ride_beta override them for all trips starting in the zone.
+ * The store is built once and is shared between all drt modes and iterations, so that every estimate is a constant time lookup.
+ * Wait times per zone and ride time parameters per zone pair can be refitted from the legs of a drt simulation, see {@link #refit(int[], int[], double[], double[], double[])}.
+ */
+public final class DrtEstimateStore {
+	public static final String RIDE_TIME_ALPHA = "ride_alpha";
+	public static final String RIDE_TIME_BETA = "ride_beta";
+
+	/**
+	 * Minimum number of legs of a zone or zone pair to refit its estimates, otherwise the next coarser fit is used.
+	 */
+	static final int MIN_SAMPLES = 30;
+
+	private final DrtLinkZoneTable zoneTable;
+//	zones of the shape file followed by the zone outside of the service area
+	private final int numberOfZones;
+	private final double typicalWaitTime;
+//	replaced as a whole when refitted, so that estimators always see consistent parameters
+	private volatile Estimates estimates;
+	private final WaitingTimeEstimator waitingTimeEstimator;
+	private final RideDurationEstimator rideDurationEstimator;
+
+	private DrtEstimateStore(DrtLinkZoneTable zoneTable, double typicalWaitTime, double[] originAlphas, double[] originBetas) {
+		this.zoneTable = zoneTable;
+		this.numberOfZones = zoneTable.getNumberOfZones() + 1;
+		this.typicalWaitTime = typicalWaitTime;
+		double[] zoneWaitTimes = new double[numberOfZones];
+		Arrays.fill(zoneWaitTimes, Double.NaN);
+
+//		the parameters of the origin zone apply to all its zone pairs until they are refitted
+		double[] alphas = new double[numberOfZones * numberOfZones];
+		double[] betas = new double[numberOfZones * numberOfZones];
+		for (int from = 0; from < numberOfZones; from++) {
+			Arrays.fill(alphas, from * numberOfZones, (from + 1) * numberOfZones, originAlphas[from]);
+			Arrays.fill(betas, from * numberOfZones, (from + 1) * numberOfZones, originBetas[from]);
+		}
+		this.estimates = new Estimates(zoneWaitTimes, alphas, betas);
+		this.waitingTimeEstimator = new ZoneWaitingTimeEstimator();
+		this.rideDurationEstimator = new ZoneRideDurationEstimator();
+	}
+
+	/**
+	 * Build the store for all links of the network.
+	 * @param typicalWaitTime wait time for links outside of all zones with typical wait time
+	 * @param rideTimeAlpha default factor on the direct ride time
+	 * @param rideTimeBeta default constant ride time in seconds
+	 */
+	public static DrtEstimateStore create(Network network, List<SimpleFeature> features, double typicalWaitTime,
+										  double rideTimeAlpha, double rideTimeBeta) {
+		DrtLinkZoneTable zoneTable = DrtLinkZoneTable.create(network, features);
+
+//		the last entry is used for trips starting outside of the service area
+		double[] alphas = new double[features.size() + 1];
+		double[] betas = new double[features.size() + 1];
+		Arrays.fill(alphas, rideTimeAlpha);
+		Arrays.fill(betas, rideTimeBeta);
+		for (int from = 0; from < features.size(); from++) {
+			SimpleFeature feature = features.get(from);
+			alphas[from] = parseOrDefault(feature.getAttribute(RIDE_TIME_ALPHA), rideTimeAlpha);
+			betas[from] = parseOrDefault(feature.getAttribute(RIDE_TIME_BETA), rideTimeBeta);
+		}
+
+		return new DrtEstimateStore(zoneTable, typicalWaitTime, alphas, betas);
+	}
+
+	private static double parseOrDefault(Object value, double defaultValue) {
+		return value == null ? defaultValue : Double.parseDouble(value.toString());
+	}
+
+	public DrtLinkZoneTable getZoneTable() {
+		return zoneTable;
+	}
+
+	public WaitingTimeEstimator getWaitingTimeEstimator() {
+		return waitingTimeEstimator;
+	}
+
+	public RideDurationEstimator getRideDurationEstimator() {
+		return rideDurationEstimator;
+	}
+
+	/**
+	 * Estimated ride time of a trip between the links with the given {@link Id#index()}.
+	 */
+	public double estimateRideDuration(int fromLinkIndex, int toLinkIndex, double directRideDuration) {
+		Estimates current = estimates;
+		int pair = getZonePair(getZone(fromLinkIndex), getZone(toLinkIndex));
+		return current.rideTimeAlphas[pair] * directRideDuration + current.rideTimeBetas[pair];
+	}
+
+	/**
+	 * Estimated wait time at the link with the given {@link Id#index()}. Refitted wait times take precedence over the typical wait times of the shape file.
+	 */
+	public double estimateWaitTime(int linkIndex) {
+		double fitted = estimates.zoneWaitTimes[getZone(linkIndex)];
+		return Double.isNaN(fitted) ? zoneTable.getTypicalWaitTime(linkIndex, typicalWaitTime) : fitted;
+	}
+
+	/**
+	 * Refit the estimates from simulated drt legs. Every zone with at least {@link #MIN_SAMPLES} departures gets the mean wait time of its legs.
+	 * The ride time = alpha * direct ride time + beta is fitted by least squares for every zone pair with at least {@link #MIN_SAMPLES} legs.
+	 * Pairs with fewer legs get the fit of their origin zone, or the fit over all legs if the origin zone has too few legs as well.
+	 * If the legs do not allow a sensible fit (alpha below 1 or too few legs), the previous parameters are kept.
+	 * @return number of zone pairs with their own ride time fit
+	 */
+	public int refit(int[] fromLinkIndices, int[] toLinkIndices, double[] waitTimes, double[] directRideTimes, double[] rideTimes) {
+		int n = fromLinkIndices.length;
+		if (toLinkIndices.length != n || waitTimes.length != n || directRideTimes.length != n || rideTimes.length != n) {
+			throw new IllegalArgumentException("All arrays have to be of the same length, got " + n + ", " + toLinkIndices.length + ", " + waitTimes.length + ", "
+				+ directRideTimes.length + " and " + rideTimes.length + "!");
+		}
+
+		int pairs = numberOfZones * numberOfZones;
+		LegSums pairSums = new LegSums(pairs);
+		LegSums originSums = new LegSums(numberOfZones);
+		LegSums allSums = new LegSums(1);
+		for (int i = 0; i < n; i++) {
+			int from = getZone(fromLinkIndices[i]);
+			int pair = getZonePair(from, getZone(toLinkIndices[i]));
+			pairSums.add(pair, waitTimes[i], directRideTimes[i], rideTimes[i]);
+			originSums.add(from, waitTimes[i], directRideTimes[i], rideTimes[i]);
+			allSums.add(0, waitTimes[i], directRideTimes[i], rideTimes[i]);
+		}
+
+		Estimates current = estimates;
+		double[] zoneWaitTimes = current.zoneWaitTimes.clone();
+		double[] alphas = current.rideTimeAlphas.clone();
+		double[] betas = current.rideTimeBetas.clone();
+
+		double[] allFit = allSums.fit(0);
+		double[][] originFits = new double[numberOfZones][];
+		for (int from = 0; from < numberOfZones; from++) {
+			if (originSums.counts[from] >= MIN_SAMPLES) {
+				zoneWaitTimes[from] = originSums.sumWait[from] / originSums.counts[from];
+			}
+			originFits[from] = originSums.fit(from);
+		}
+
+		int fitted = 0;
+		for (int pair = 0; pair < pairs; pair++) {
+			double[] pairFit = pairSums.fit(pair);
+			if (pairFit != null) {
+				fitted++;
+			} else {
+				pairFit = originFits[pair / numberOfZones] != null ? originFits[pair / numberOfZones] : allFit;
+			}
+			if (pairFit != null) {
+				alphas[pair] = pairFit[0];
+				betas[pair] = pairFit[1];
+			}
+		}
+
+		estimates = new Estimates(zoneWaitTimes, alphas, betas);
+		return fitted;
+	}
+
+	/**
+	 * Zone of the link with the given {@link Id#index()}, the last zone if it is outside of the service area.
+	 */
+	int getZone(int linkIndex) {
+		int zone = zoneTable.getZoneIndex(linkIndex);
+		return zone == ShpZoneIndex.NO_ZONE ? numberOfZones - 1 : zone;
+	}
+
+	private int getZonePair(int fromZone, int toZone) {
+		return fromZone * numberOfZones + toZone;
+	}
+
+	/**
+	 * Waiting time estimator backed by the wait times of this store.
+	 */
+	private final class ZoneWaitingTimeEstimator implements WaitingTimeEstimator {
+		@Override
+		public double estimateWaitTime(DrtRoute route) {
+			return DrtEstimateStore.this.estimateWaitTime(route.getStartLinkId().index());
+		}
+	}
+
+	/**
+	 * Ride duration estimator backed by the zone pair parameters of this store.
+	 */
+	private final class ZoneRideDurationEstimator implements RideDurationEstimator {
+		@Override
+		public double getEstimatedRideDuration(Id<Link> fromLinkId, Id<Link> toLinkId, double departureTime, double directRideDuration) {
+			return estimateRideDuration(fromLinkId.index(), toLinkId.index(), directRideDuration);
+		}
+	}
+
+	/**
+	 * Sums over the legs of several zones or zone pairs, from which the mean wait time and the ride time fit are computed.
+	 */
+	private static final class LegSums {
+		private final long[] counts;
+		private final double[] sumWait;
+		private final double[] sumX;
+		private final double[] sumY;
+		private final double[] sumXX;
+		private final double[] sumXY;
+
+		private LegSums(int size) {
+			this.counts = new long[size];
+			this.sumWait = new double[size];
+			this.sumX = new double[size];
+			this.sumY = new double[size];
+			this.sumXX = new double[size];
+			this.sumXY = new double[size];
+		}
+
+		private void add(int i, double waitTime, double directRideTime, double rideTime) {
+			counts[i]++;
+			sumWait[i] += waitTime;
+			sumX[i] += directRideTime;
+			sumY[i] += rideTime;
+			sumXX[i] += directRideTime * directRideTime;
+			sumXY[i] += directRideTime * rideTime;
+		}
+
+		/**
+		 * Least squares fit of ride time = alpha * direct ride time + beta, or null if there are too few legs or alpha is below 1.
+		 */
+		private double[] fit(int i) {
+			long count = counts[i];
+			double denominator = count * sumXX[i] - sumX[i] * sumX[i];
+			if (count < MIN_SAMPLES || denominator <= 0) {
+				return null;
+			}
+			double alpha = (count * sumXY[i] - sumX[i] * sumY[i]) / denominator;
+			double beta = (sumY[i] - alpha * sumX[i]) / count;
+			if (!Double.isFinite(alpha) || alpha < 1.) {
+				return null;
+			}
+			return new double[]{alpha, Math.max(beta, 0.)};
+		}
+	}
+
+	/**
+	 * Wait time per origin zone (NaN if not fitted) and ride time parameters per zone pair, indexed by origin zone * number of zones + destination zone.
+	 */
+	private record Estimates(double[] zoneWaitTimes, double[] rideTimeAlphas, double[] rideTimeBetas) {
+	}
+}
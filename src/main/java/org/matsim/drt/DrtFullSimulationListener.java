@@ -0,0 +1,216 @@
+package org.matsim.drt;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.drt.routing.DrtRoute;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.filter.NetworkFilterManager;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.run.DrtAndIntermodalityOptions;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.Vehicles;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hybrid drt simulation: the main run simulates drt with estimate and teleport. Every n iterations, the drt legs of the selected plans are simulated
+ * with a full dvrp simulation and the wait and ride times of its drt legs are used to refit the {@link DrtEstimateStore} of the main run.
+ * The simulation type of a drt mode cannot change between the iterations of one controler, hence the full simulation is a drt only run of
+ * {@link RunDrtFullSimulation}, which is set up like the one of RunDrtPostSimulation, see {@link DrtOnlyRunConfig}. It is started as a separate
+ * java process with the class path of the main run, so that the logging, the random numbers and the ids of the main run are not affected.
+ * Its input and output is written to the iteration directory of the main run.
+ * The fleet mirrors the drt vehicles of the main scenario, if there are any apart from the dummy vehicle of estimate and teleport.
+ * Only legs of the mode drt are simulated, hence the scenario has to have exactly one drt mode.
+ */
+public class DrtFullSimulationListener implements IterationEndsListener {
+	private static final Logger log = LogManager.getLogger(DrtFullSimulationListener.class);
+
+	private static final String FULL_SIM_DIR = "drt-full-sim";
+
+	private final DrtEstimateStore estimateStore;
+	private final String drtAreaShp;
+	private final int interval;
+	private final int fleetSize;
+
+	/**
+	 * Create the listener.
+	 * @param drtAreaShp service area of the drt fleet in the full simulation
+	 * @param fleetSize fleet size of the full simulation, if the main scenario has no drt fleet
+	 */
+	public DrtFullSimulationListener(DrtEstimateStore estimateStore, String drtAreaShp, int interval, int fleetSize) {
+		if (interval <= 0 || fleetSize <= 0) {
+			throw new IllegalArgumentException("Interval (" + interval + ") and fleet size (" + fleetSize + ") of the drt full simulation have to be positive!");
+		}
+		this.estimateStore = estimateStore;
+		this.drtAreaShp = drtAreaShp;
+		this.interval = interval;
+		this.fleetSize = fleetSize;
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		int iteration = event.getIteration();
+		Scenario scenario = event.getServices().getScenario();
+//		the refit would have no effect after the last iteration
+		if (iteration == scenario.getConfig().controller().getFirstIteration() || iteration % interval != 0 || event.isLastIteration()) {
+			return;
+		}
+
+		Path dir = Path.of(event.getServices().getControlerIO().getIterationPath(iteration), FULL_SIM_DIR);
+		Instant start = Instant.now();
+		try {
+			runFullSimulation(scenario, dir);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the drt full simulation in " + dir, e);
+		}
+		log.info("Drt full simulation of iteration {} took {} s", iteration, Duration.between(start, Instant.now()).toSeconds());
+	}
+
+	private void runFullSimulation(Scenario scenario, Path dir) throws IOException, InterruptedException {
+		Files.createDirectories(dir);
+
+//		one line per drt leg of the selected plans, the links and the direct ride time of the estimated route are kept for the refit
+		IntArrayList fromLinks = new IntArrayList();
+		IntArrayList toLinks = new IntArrayList();
+		DoubleArrayList directRideTimes = new DoubleArrayList();
+		writeDrtLegs(scenario, dir.resolve(RunDrtFullSimulation.LEGS_INPUT), fromLinks, toLinks, directRideTimes);
+
+		Path networkPath = dir.resolve("drt-network.xml.gz");
+		NetworkFilterManager filter = new NetworkFilterManager(scenario.getNetwork(), scenario.getConfig().network());
+		filter.addLinkFilter(link -> link.getAllowedModes().contains(TransportMode.drt));
+		NetworkUtils.writeNetwork(filter.applyFilters(), networkPath.toString());
+
+//		config groups of the main run must not be modified, hence a copy is read from file by the drt only run
+		Path configPath = dir.resolve("main-config.xml");
+		ConfigUtils.writeConfig(scenario.getConfig(), configPath.toString());
+
+		FleetParameters fleet = FleetParameters.create(scenario.getVehicles(), fleetSize);
+		log.info("Simulating {} drt legs with a fleet of {} vehicles with {} seats in {}", fromLinks.size(), fleet.size(), fleet.capacity(), dir);
+
+		List<String> command = new ArrayList<>(List.of(
+			Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+			"-cp", System.getProperty("java.class.path"),
+			RunDrtFullSimulation.class.getName(),
+			"--directory", dir.toString(),
+			"--config", configPath.toString(),
+			"--context", scenario.getConfig().getContext().toString(),
+			"--network", networkPath.toString(),
+			"--drt-area-shp", drtAreaShp,
+			"--fleet-size", Integer.toString(fleet.size()),
+			"--capacity", Integer.toString(fleet.capacity()),
+			"--service-begin-time", Double.toString(fleet.serviceBeginTime()),
+			"--service-end-time", Double.toString(fleet.serviceEndTime())));
+
+//		the console output of the drt only run is kept apart from the one of the main run, its log files are written to its output directory
+		Path console = dir.resolve("console.log");
+		Process process = new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(console.toFile())
+			.start();
+		int exitCode = process.waitFor();
+		if (exitCode != 0) {
+			throw new IllegalStateException("Drt full simulation in " + dir + " failed with exit code " + exitCode + ", see " + console);
+		}
+
+		refit(dir.resolve(RunDrtFullSimulation.LEGS_OUTPUT), fromLinks, toLinks, directRideTimes);
+	}
+
+	/**
+	 * Write the drt legs of the selected plans, identified by their index in the given lists.
+	 */
+	private static void writeDrtLegs(Scenario scenario, Path legsPath, IntArrayList fromLinks, IntArrayList toLinks,
+									 DoubleArrayList directRideTimes) throws IOException {
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(legsPath), CSVFormat.Builder.create()
+			.setHeader(RunDrtFullSimulation.LEG_INDEX, RunDrtFullSimulation.FROM_LINK, RunDrtFullSimulation.TO_LINK, RunDrtFullSimulation.DEPARTURE_TIME)
+			.build())) {
+			for (Person person : scenario.getPopulation().getPersons().values()) {
+				for (Leg leg : TripStructureUtils.getLegs(person.getSelectedPlan())) {
+					if (!leg.getMode().equals(TransportMode.drt) || !(leg.getRoute() instanceof DrtRoute route) || leg.getDepartureTime().isUndefined()) {
+						continue;
+					}
+
+					printer.printRecord(fromLinks.size(), route.getStartLinkId(), route.getEndLinkId(), leg.getDepartureTime().seconds());
+					fromLinks.add(route.getStartLinkId().index());
+					toLinks.add(route.getEndLinkId().index());
+					directRideTimes.add(route.getDirectRideTime());
+				}
+			}
+		}
+	}
+
+	private void refit(Path simulatedLegs, IntArrayList fromLinks, IntArrayList toLinks, DoubleArrayList directRideTimes) throws IOException {
+		IntArrayList legFromLinks = new IntArrayList();
+		IntArrayList legToLinks = new IntArrayList();
+		DoubleArrayList waitTimes = new DoubleArrayList();
+		DoubleArrayList legDirectRideTimes = new DoubleArrayList();
+		DoubleArrayList rideTimes = new DoubleArrayList();
+
+		try (CSVParser parser = new CSVParser(Files.newBufferedReader(simulatedLegs),
+			CSVFormat.Builder.create().setHeader().setSkipHeaderRecord(true).build())) {
+			for (CSVRecord csvRecord : parser) {
+				int leg = Integer.parseInt(csvRecord.get(RunDrtFullSimulation.LEG_INDEX));
+				legFromLinks.add(fromLinks.getInt(leg));
+				legToLinks.add(toLinks.getInt(leg));
+				waitTimes.add(Double.parseDouble(csvRecord.get(RunDrtFullSimulation.WAIT_TIME)));
+				legDirectRideTimes.add(directRideTimes.getDouble(leg));
+				rideTimes.add(Double.parseDouble(csvRecord.get(RunDrtFullSimulation.RIDE_TIME)));
+			}
+		}
+
+		int zonePairs = estimateStore.refit(legFromLinks.toIntArray(), legToLinks.toIntArray(), waitTimes.toDoubleArray(), legDirectRideTimes.toDoubleArray(), rideTimes.toDoubleArray());
+		log.info("Refitted drt estimates from {} of {} simulated legs, {} zone pairs have their own fit", legFromLinks.size(), fromLinks.size(), zonePairs);
+	}
+
+	/**
+	 * Fleet of the full simulation. Size, capacity and service time are taken from the drt vehicles of the main scenario, i.e. the vehicles
+	 * with attribute dvrpMode = drt, if there are any apart from the dummy vehicle of estimate and teleport. Otherwise, the given fleet size
+	 * and default vehicles are used.
+	 */
+	private record FleetParameters(int size, int capacity, double serviceBeginTime, double serviceEndTime) {
+		private static final int DEFAULT_CAPACITY = 8;
+		private static final double DEFAULT_SERVICE_END_TIME = 36 * 3600.;
+
+		private static FleetParameters create(Vehicles vehicles, int defaultFleetSize) {
+			List<Vehicle> drtVehicles = vehicles.getVehicles().values().stream()
+				.filter(vehicle -> TransportMode.drt.equals(vehicle.getAttributes().getAttribute("dvrpMode")))
+				.filter(vehicle -> !vehicle.getId().toString().equals(DrtAndIntermodalityOptions.DRT_DUMMY_VEHICLE))
+				.toList();
+			if (drtVehicles.isEmpty()) {
+				return new FleetParameters(defaultFleetSize, DEFAULT_CAPACITY, 0., DEFAULT_SERVICE_END_TIME);
+			}
+
+			int capacity = drtVehicles.stream().mapToInt(vehicle -> vehicle.getType().getCapacity().getSeats()).max().orElseThrow();
+			double serviceBeginTime = drtVehicles.stream().mapToDouble(vehicle -> time(vehicle, "serviceBeginTime", 0.)).min().orElseThrow();
+			double serviceEndTime = drtVehicles.stream().mapToDouble(vehicle -> time(vehicle, "serviceEndTime", DEFAULT_SERVICE_END_TIME)).max().orElseThrow();
+			return new FleetParameters(drtVehicles.size(), capacity, serviceBeginTime, serviceEndTime);
+		}
+
+		private static double time(Vehicle vehicle, String attribute, double defaultValue) {
+			Object value = vehicle.getAttributes().getAttribute(attribute);
+			return value == null ? defaultValue : Double.parseDouble(value.toString());
+		}
+	}
+}
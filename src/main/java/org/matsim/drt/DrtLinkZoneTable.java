@@ -0,0 +1,125 @@
+package org.matsim.drt;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.utils.ShpZoneIndex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Zone information of every network link with respect to the drt service area shape file, computed once from the to-node of each link.
+ * Stores whether a link lies in a main service area (attribute area_type = main), the minimum typical wait time (attribute typ_wt)
+ * of all zones containing the link and the smallest zone containing the link, see {@link ShpZoneIndex}. Zones are looked up via the
+ * STR-tree of {@link ShpZoneIndex}. Arrays are indexed by {@link Id#index()} of the link, so that lookups during the simulation do not need
+ * any geometry operations. The table is immutable and can be shared between modes and threads.
+ */
+public final class DrtLinkZoneTable {
+	public static final String AREA_TYPE = "area_type";
+	public static final String MAIN_AREA = "main";
+	public static final String TYP_WT = "typ_wt";
+	public static final String ID = "id";
+
+	private final BitSet mainArea;
+	private final double[] typicalWaitTimes;
+	private final int[] linkZones;
+	private final int numberOfZones;
+
+	private DrtLinkZoneTable(BitSet mainArea, double[] typicalWaitTimes, int[] linkZones, int numberOfZones) {
+		this.mainArea = mainArea;
+		this.typicalWaitTimes = typicalWaitTimes;
+		this.linkZones = linkZones;
+		this.numberOfZones = numberOfZones;
+	}
+
+	/**
+	 * Compute the table for all links of the network.
+	 */
+	public static DrtLinkZoneTable create(Network network, List<SimpleFeature> features) {
+		ShpZoneIndex zoneIndex = new ShpZoneIndex(features, ID);
+		boolean[] isMain = new boolean[features.size()];
+		double[] featureWaitTimes = new double[features.size()];
+		for (int i = 0; i < features.size(); i++) {
+			SimpleFeature feature = features.get(i);
+			isMain[i] = MAIN_AREA.equals(String.valueOf(feature.getAttribute(AREA_TYPE)));
+			Object typWt = feature.getAttribute(TYP_WT);
+			featureWaitTimes[i] = typWt == null ? Double.NaN : Double.parseDouble(typWt.toString());
+		}
+
+		int size = 0;
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			size = Math.max(size, linkId.index() + 1);
+		}
+
+		BitSet mainArea = new BitSet(size);
+		double[] typicalWaitTimes = new double[size];
+		Arrays.fill(typicalWaitTimes, Double.NaN);
+		int[] linkZones = new int[size];
+		Arrays.fill(linkZones, ShpZoneIndex.NO_ZONE);
+
+		for (Link link : network.getLinks().values()) {
+			int index = link.getId().index();
+			Coord coord = link.getToNode().getCoord();
+//			smallest zone first
+			int[] zones = zoneIndex.getEnclosingZoneIndices(coord.getX(), coord.getY());
+			if (zones.length > 0) {
+				linkZones[index] = zones[0];
+			}
+			for (int i : zones) {
+				if (isMain[i]) {
+					mainArea.set(index);
+				}
+				if (!Double.isNaN(featureWaitTimes[i]) && (Double.isNaN(typicalWaitTimes[index]) || featureWaitTimes[i] < typicalWaitTimes[index])) {
+					typicalWaitTimes[index] = featureWaitTimes[i];
+				}
+			}
+		}
+		return new DrtLinkZoneTable(mainArea, typicalWaitTimes, linkZones, features.size());
+	}
+
+	/**
+	 * Whether the link lies in a main service area.
+	 */
+	public boolean isInMainArea(Link link) {
+		return mainArea.get(link.getId().index());
+	}
+
+	/**
+	 * Minimum typical wait time of all zones containing the link, or the default value if the link is not contained in any zone with typical wait time.
+	 */
+	public double getTypicalWaitTime(Link link, double defaultValue) {
+		return getTypicalWaitTime(link.getId().index(), defaultValue);
+	}
+
+	/**
+	 * Same as {@link #getTypicalWaitTime(Link, double)}, for the {@link Id#index()} of a link.
+	 */
+	public double getTypicalWaitTime(int linkIndex, double defaultValue) {
+		if (linkIndex >= typicalWaitTimes.length || Double.isNaN(typicalWaitTimes[linkIndex])) {
+			return defaultValue;
+		}
+		return typicalWaitTimes[linkIndex];
+	}
+
+	/**
+	 * Dense index (position in feature list) of the smallest zone containing the link, or {@link ShpZoneIndex#NO_ZONE}.
+	 */
+	public int getZoneIndex(int linkIndex) {
+		return linkIndex < linkZones.length ? linkZones[linkIndex] : ShpZoneIndex.NO_ZONE;
+	}
+
+	public int getNumberOfZones() {
+		return numberOfZones;
+	}
+
+	/**
+	 * Upper bound (exclusive) of link indices in this table.
+	 */
+	public int size() {
+		return typicalWaitTimes.length;
+	}
+}
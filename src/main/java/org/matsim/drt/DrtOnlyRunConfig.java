@@ -0,0 +1,92 @@
+package org.matsim.drt;
+
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
+import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
+import org.matsim.contrib.emissions.utils.EmissionsConfigGroup;
+import org.matsim.contrib.vsp.pt.fare.PtFareConfigGroup;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.RoutingConfigGroup;
+import org.matsim.core.config.groups.ScoringConfigGroup;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Config of a drt only run, which simulates the drt legs of a main run with a full dvrp simulation.
+ * Shared by RunDrtPostSimulation and the hybrid drt simulation of {@link DrtFullSimulationListener}, see {@link RunDrtFullSimulation}.
+ */
+public final class DrtOnlyRunConfig {
+	/**
+	 * Activity type of the drt plans, which is not scored.
+	 */
+	public static final String DUMMY_ACT_TYPE = "dummy";
+
+	private static final Set<String> EXCLUDED_GROUPS = Set.of(EmissionsConfigGroup.GROUP_NAME, ScoringConfigGroup.GROUP_NAME,
+		PtFareConfigGroup.MODULE_NAME, SwissRailRaptorConfigGroup.GROUP);
+
+	private DrtOnlyRunConfig() {
+	}
+
+	/**
+	 * Create a config with all config groups of the main run, apart from scoring, emissions, pt fares and the pt router.
+	 * The scoring only contains the parameters of the dummy activity.
+	 * Apparently one cannot replace a config group with a custom one and also cannot delete act params and mode params from the scoring group.
+	 * Thus, an empty config container is filled with the groups which are needed. The groups are shared with the given config.
+	 */
+	public static Config create(Config mainConfig) {
+		ScoringConfigGroup scoring = new ScoringConfigGroup();
+		ScoringConfigGroup.ActivityParams dummyActParams = scoring.getActivityParams(DUMMY_ACT_TYPE);
+		dummyActParams.setScoringThisActivityAtAll(false);
+		dummyActParams.setTypicalDuration(24 * 3600.);
+		dummyActParams.setTypicalDurationScoreComputation(ScoringConfigGroup.TypicalDurationScoreComputation.relative);
+
+		Config config = new Config();
+		config.addModule(scoring);
+		for (ConfigGroup group : mainConfig.getModules().values()) {
+			if (!EXCLUDED_GROUPS.contains(group.getName())) {
+				config.addModule(group);
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * The drt mode of the config. There has to be exactly one, named drt, which should always be the case in this scenario.
+	 */
+	public static DrtConfigGroup getDrtConfigGroup(Config config) {
+		List<DrtConfigGroup> drtConfigGroups = List.copyOf(ConfigUtils.addOrGetModule(config, MultiModeDrtConfigGroup.class).getModalElements());
+		if (drtConfigGroups.size() != 1 || !drtConfigGroups.getFirst().getMode().equals(TransportMode.drt)) {
+			throw new IllegalStateException("A drt only run needs exactly one drt mode with name " + TransportMode.drt + ", but the config has the drt modes " +
+				drtConfigGroups.stream().map(DrtConfigGroup::getMode).toList() + "!");
+		}
+		return drtConfigGroups.getFirst();
+	}
+
+	/**
+	 * Settings shared by all drt only runs: the given input files, network capacity of a 100% scenario because only drt vehicles are simulated,
+	 * no pt and no access and egress routing.
+	 */
+	public static void adapt(Config config, String outputDirectory, String plansFile, String networkFile, String vehicleTypesFile, String networkMode) {
+		ConfigUtils.addOrGetModule(config, DvrpConfigGroup.class).networkModes = Set.of(networkMode);
+
+		config.controller().setOutputDirectory(outputDirectory);
+		config.counts().setInputFile(null);
+		config.plans().setInputFile(plansFile);
+		config.network().setInputFile(networkFile);
+		config.qsim().setFlowCapFactor(1.);
+		config.qsim().setStorageCapFactor(1.);
+		config.qsim().setMainModes(Set.of(networkMode));
+		config.replanningAnnealer().setActivateAnnealingModule(false);
+		config.routing().setAccessEgressType(RoutingConfigGroup.AccessEgressType.none);
+		config.routing().setNetworkModes(Set.of(networkMode));
+		config.transit().setUseTransit(false);
+		config.transit().setTransitScheduleFile(null);
+		config.transit().setVehiclesFile(null);
+		config.vehicles().setVehiclesFile(vehicleTypesFile);
+	}
+}
@@ -0,0 +1,53 @@
+package org.matsim.drt;
+
+import org.matsim.api.core.v01.Id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Per-person state of an event handler, split into a fixed number of shards by {@link Id#index()} of the person.
+ * Events of different persons can be handled concurrently if the handler synchronizes on the shard of the person, there is no global lock.
+ * Within a shard, state is stored in arrays indexed by {@link #localIndex(int)}.
+ */
+final class PersonShards<S> {
+	static final int SHARD_BITS = 4;
+	static final int NUMBER_OF_SHARDS = 1 << SHARD_BITS;
+
+	private final List<S> shards = new ArrayList<>(NUMBER_OF_SHARDS);
+
+	PersonShards(Supplier<S> factory) {
+		for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+			shards.add(factory.get());
+		}
+	}
+
+	/**
+	 * Shard of the person with the given index.
+	 */
+	S get(int personIndex) {
+		return shards.get(personIndex & (NUMBER_OF_SHARDS - 1));
+	}
+
+	/**
+	 * Shard with the given number, from 0 to {@link #NUMBER_OF_SHARDS} (exclusive).
+	 */
+	S getShard(int shard) {
+		return shards.get(shard);
+	}
+
+	/**
+	 * Index of the person within its shard.
+	 */
+	static int localIndex(int personIndex) {
+		return personIndex >>> SHARD_BITS;
+	}
+
+	/**
+	 * Inverse of {@link #localIndex(int)}.
+	 */
+	static int personIndex(int shard, int localIndex) {
+		return (localIndex << SHARD_BITS) | shard;
+	}
+}
@@ -1,6 +1,8 @@
 package org.matsim.drt;
 
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleRBTreeMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.events.PersonMoneyEvent;
@@ -12,10 +14,8 @@ import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.controler.events.AfterMobsimEvent;
 import org.matsim.core.controler.listener.AfterMobsimListener;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import static org.matsim.drt.ChainedPtAndDrtFareHandler.DRT_OR_PT_FARE;
 
@@ -24,6 +24,7 @@ import static org.matsim.drt.ChainedPtAndDrtFareHandler.DRT_OR_PT_FARE;
  * e.g. ticket subscription). If the upper bound is reached, refund will be issued at the end of the
  * iteration (i.e. after Mobsim). In that case, we assume that PT user is a frequent traveller and will use subscription
  * instead of single tickets.
+ * The fares are summed up in shards by person, see {@link PersonShards}, so that money events can be delivered concurrently.
  * @author Chengqi Lu (luchengqi7)
  */
 public class PtAndDrtFareUpperBoundHandler implements PersonMoneyEventHandler, AfterMobsimListener {
@@ -37,47 +38,77 @@ public class PtAndDrtFareUpperBoundHandler implements PersonMoneyEventHandler, A
 	@Inject
 	private QSimConfigGroup qSimConfigGroup;
 
-	private final Map<Id<Person>, List<Double>> ptFareRecords = new HashMap<>();
+	private final PersonShards<FareShard> fares = new PersonShards<>(FareShard::new);
 
 	public PtAndDrtFareUpperBoundHandler(double upperBoundFactor) {
 		this.upperBoundFactor = upperBoundFactor;
 	}
 
+	PtAndDrtFareUpperBoundHandler(double upperBoundFactor, EventsManager events, QSimConfigGroup qSimConfigGroup) {
+		this(upperBoundFactor);
+		this.events = events;
+		this.qSimConfigGroup = qSimConfigGroup;
+	}
+
 	@Override
 	public void handleEvent(PersonMoneyEvent event) {
 		if (event.getPurpose().equals(PtFareConfigGroup.PT_FARE) ||
 			event.getPurpose().equals(DRT_OR_PT_FARE)) {
-			Id<Person> personId = event.getPersonId();
-			ptFareRecords.computeIfAbsent(personId, l -> new ArrayList<>()).add(event.getAmount() * -1);
+			int personIndex = event.getPersonId().index();
+			int index = PersonShards.localIndex(personIndex);
+			FareShard shard = fares.get(personIndex);
+
+			double fare = event.getAmount() * -1;
+			synchronized (shard) {
+				shard.ensureCapacity(index);
+				shard.fareSums[index] += fare;
+				if (fare > shard.maxFares[index]) {
+					shard.maxFares[index] = fare;
+				}
+				shard.personsWithFares.set(index);
+			}
 		}
 	}
 
 	@Override
 	public void reset(int iteration) {
-		ptFareRecords.clear();
+		for (int i = 0; i < PersonShards.NUMBER_OF_SHARDS; i++) {
+			FareShard shard = fares.getShard(i);
+			synchronized (shard) {
+				for (int index = shard.personsWithFares.nextSetBit(0); index >= 0; index = shard.personsWithFares.nextSetBit(index + 1)) {
+					shard.fareSums[index] = 0;
+					shard.maxFares[index] = 0;
+				}
+				shard.personsWithFares.clear();
+			}
+		}
 	}
 	@Override
 	public void notifyAfterMobsim(AfterMobsimEvent event) {
-		for (Id<Person> personId : ptFareRecords.keySet()) {
-			double refund = calculateRefund(ptFareRecords.get(personId));
-			if (refund > 0) {
-				// Issue refund to person
-				events.processEvent(
-					new PersonMoneyEvent(getOrCalcCompensationTime(), personId, refund,
-						PT_REFUND, TransportMode.pt, "Refund for person " + personId.toString()));
+//		refunds of all shards are collected first, so that they are issued in the order of person indices and without holding a lock
+		Int2DoubleMap refunds = new Int2DoubleRBTreeMap();
+		for (int i = 0; i < PersonShards.NUMBER_OF_SHARDS; i++) {
+			FareShard shard = fares.getShard(i);
+			synchronized (shard) {
+				for (int index = shard.personsWithFares.nextSetBit(0); index >= 0; index = shard.personsWithFares.nextSetBit(index + 1)) {
+					double refund = calculateRefund(shard.fareSums[index], shard.maxFares[index]);
+					if (refund > 0) {
+						refunds.put(PersonShards.personIndex(i, index), refund);
+					}
+				}
 			}
 		}
-	}
 
-	private double calculateRefund(List<Double> fares) {
-		double sum = 0;
-		double maxFare = 0;
-		for (double fare : fares) {
-			sum += fare;
-			if (fare > maxFare) {
-				maxFare = fare;
-			}
+		for (Int2DoubleMap.Entry e : refunds.int2DoubleEntrySet()) {
+			Id<Person> personId = Id.get(e.getIntKey(), Person.class);
+			// Issue refund to person
+			events.processEvent(
+				new PersonMoneyEvent(getOrCalcCompensationTime(), personId, e.getDoubleValue(),
+					PT_REFUND, TransportMode.pt, "Refund for person " + personId.toString()));
 		}
+	}
+
+	private double calculateRefund(double sum, double maxFare) {
 		double upperBound = maxFare * upperBoundFactor;
 		if (sum > upperBound) {
 			return sum - upperBound;
@@ -93,4 +124,21 @@ public class PtAndDrtFareUpperBoundHandler implements PersonMoneyEventHandler, A
 		}
 		return this.mobsimEndTime;
 	}
+
+	/**
+	 * Sum and maximum of all pt fares of the persons of one shard. Persons with fares are marked in the bit set.
+	 */
+	private static final class FareShard {
+		private double[] fareSums = new double[0];
+		private double[] maxFares = new double[0];
+		private final BitSet personsWithFares = new BitSet();
+
+		private void ensureCapacity(int index) {
+			if (index >= fareSums.length) {
+				int length = Math.max(index + 1, Math.max(PersonShards.localIndex(Id.getNumberOfIds(Person.class)) + 1, fareSums.length * 2));
+				fareSums = Arrays.copyOf(fareSums, length);
+				maxFares = Arrays.copyOf(maxFares, length);
+			}
+		}
+	}
 }
@@ -0,0 +1,187 @@
+package org.matsim.drt;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.application.options.CsvOptions;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.contrib.drt.run.DrtConfigGroup;
+import org.matsim.contrib.drt.run.DrtControlerCreator;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ReplanningConfigGroup;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.utils.CreateFleetVehicles;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+/**
+ * Drt only full simulation of the drt legs of a main run, see {@link DrtFullSimulationListener}. The listener starts this command in a separate
+ * java process, so that the controler, the logging and the random numbers of the main run are not affected by it.
+ * Every leg of the input file is simulated by one passenger, whose leg index is stored as person attribute. The wait and ride times of the
+ * simulated legs are written together with their leg index, so that the main run does not depend on the ids of the passengers.
+ */
+@CommandLine.Command(name = "drt-full-simulation", description = "Drt only full simulation of the drt legs of a main run.")
+public final class RunDrtFullSimulation implements MATSimAppCommand {
+	private static final Logger log = LogManager.getLogger(RunDrtFullSimulation.class);
+
+	static final String LEGS_INPUT = "drt-legs.csv";
+	static final String LEGS_OUTPUT = "simulated-drt-legs.csv";
+	static final String LEG_INDEX = "legIndex";
+	static final String FROM_LINK = "fromLinkId";
+	static final String TO_LINK = "toLinkId";
+	static final String DEPARTURE_TIME = "departureTime";
+	static final String WAIT_TIME = "waitTime";
+	static final String RIDE_TIME = "rideTime";
+
+	private static final String PASSENGER_PREFIX = "drt-passenger-";
+	private static final String NETWORK_MODE = TransportMode.car;
+
+	@CommandLine.Option(names = "--directory", description = "Directory with the input files of the listener, the output is written to it as well.", required = true)
+	private Path directory;
+	@CommandLine.Option(names = "--config", description = "Config of the main run.", required = true)
+	private Path configPath;
+	@CommandLine.Option(names = "--context", description = "Context of the main config, against which its relative paths are resolved.", required = true)
+	private String context;
+	@CommandLine.Option(names = "--network", description = "Drt network.", required = true)
+	private Path networkPath;
+	@CommandLine.Option(names = "--drt-area-shp", description = "Service area of the drt fleet.", required = true)
+	private String drtAreaShp;
+	@CommandLine.Option(names = "--fleet-size", description = "Number of drt vehicles.", required = true)
+	private int fleetSize;
+	@CommandLine.Option(names = "--capacity", description = "Seats per drt vehicle.", required = true)
+	private int capacity;
+	@CommandLine.Option(names = "--service-begin-time", description = "Service begin time of the drt vehicles.", required = true)
+	private double serviceBeginTime;
+	@CommandLine.Option(names = "--service-end-time", description = "Service end time of the drt vehicles.", required = true)
+	private double serviceEndTime;
+
+	public static void main(String[] args) {
+		new RunDrtFullSimulation().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		Network network = NetworkUtils.readNetwork(networkPath.toString());
+		Population drtPlans = createDrtPlans(network);
+		Path plansPath = directory.resolve("drt-plans.xml.gz");
+		new PopulationWriter(drtPlans).write(plansPath.toString());
+
+		CreateFleetVehicles fleetGenerator = new CreateFleetVehicles(capacity, TransportMode.drt, serviceBeginTime, serviceEndTime,
+			"", new ShpOptions(drtAreaShp, null, null), networkPath.toString(), directory);
+		String[] fleetPaths = fleetGenerator.generateFleetWithSpecifiedParams(fleetSize, fleetGenerator.getAllowedStartLinks(), null, NETWORK_MODE);
+
+		Path outputDirectory = directory.resolve("output");
+		Config config = createConfig(outputDirectory, plansPath, fleetPaths);
+		DrtControlerCreator.createControler(config, false).run();
+
+		writeSimulatedLegs(globFile(outputDirectory, "*output_drt_legs_" + TransportMode.drt + ".csv"), drtPlans);
+		return 0;
+	}
+
+	/**
+	 * One passenger per leg of the input file, with a dummy activity at the start and end link of the leg.
+	 */
+	private Population createDrtPlans(Network network) throws IOException {
+		Population drtPlans = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory factory = drtPlans.getFactory();
+
+		try (CSVParser parser = new CSVParser(Files.newBufferedReader(directory.resolve(LEGS_INPUT)),
+			CSVFormat.Builder.create().setHeader().setSkipHeaderRecord(true).build())) {
+			for (CSVRecord csvRecord : parser) {
+				int legIndex = Integer.parseInt(csvRecord.get(LEG_INDEX));
+				Person passenger = factory.createPerson(Id.createPersonId(PASSENGER_PREFIX + legIndex));
+				passenger.getAttributes().putAttribute(LEG_INDEX, legIndex);
+
+				Plan plan = factory.createPlan();
+				Activity fromAct = createDummyActivity(network, factory, csvRecord.get(FROM_LINK));
+				fromAct.setEndTime(Double.parseDouble(csvRecord.get(DEPARTURE_TIME)));
+				plan.addActivity(fromAct);
+				plan.addLeg(factory.createLeg(TransportMode.drt));
+				plan.addActivity(createDummyActivity(network, factory, csvRecord.get(TO_LINK)));
+				passenger.addPlan(plan);
+				drtPlans.addPerson(passenger);
+			}
+		}
+		return drtPlans;
+	}
+
+	private static Activity createDummyActivity(Network network, PopulationFactory factory, String linkId) {
+		Link link = network.getLinks().get(Id.createLinkId(linkId));
+		if (link == null) {
+			throw new IllegalArgumentException("Link " + linkId + " of a drt leg is not part of the drt network!");
+		}
+		Activity act = factory.createActivityFromCoord(DrtOnlyRunConfig.DUMMY_ACT_TYPE, link.getToNode().getCoord());
+		act.setLinkId(link.getId());
+		return act;
+	}
+
+	/**
+	 * Config of the drt only run, based on the config of the main run, see {@link DrtOnlyRunConfig}.
+	 */
+	private Config createConfig(Path outputDirectory, Path plansPath, String[] fleetPaths) throws IOException {
+		Config oldConfig = ConfigUtils.loadConfig(configPath.toString());
+		oldConfig.setContext(URI.create(context).toURL());
+
+		Config config = DrtOnlyRunConfig.create(oldConfig);
+		config.scoring().addModeParams(oldConfig.scoring().getModes().get(TransportMode.drt));
+		config.setContext(oldConfig.getContext());
+
+		DrtConfigGroup drtCfg = DrtOnlyRunConfig.getDrtConfigGroup(config);
+		drtCfg.simulationType = DrtConfigGroup.SimulationType.fullSimulation;
+		drtCfg.vehiclesFile = fleetPaths[0];
+		drtCfg.addOrGetDrtOptimizationConstraintsParams().addOrGetDefaultDrtOptimizationConstraintsSet().rejectRequestIfMaxWaitOrTravelTimeViolated = false;
+
+		DrtOnlyRunConfig.adapt(config, outputDirectory.toString(), plansPath.toString(), networkPath.toString(), fleetPaths[1], NETWORK_MODE);
+		config.controller().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+		config.controller().setFirstIteration(0);
+		config.controller().setLastIteration(0);
+
+		ReplanningConfigGroup.StrategySettings changeExpBeta = new ReplanningConfigGroup.StrategySettings();
+		changeExpBeta.setStrategyName("ChangeExpBeta");
+		changeExpBeta.setWeight(1.);
+		config.replanning().clearStrategySettings();
+		config.replanning().addStrategySettings(changeExpBeta);
+		return config;
+	}
+
+	/**
+	 * Write wait and ride time of every simulated leg. The leg is identified by the leg index attribute of its passenger.
+	 */
+	private void writeSimulatedLegs(Path drtLegs, Population drtPlans) throws IOException {
+		int legs = 0;
+		try (CSVParser parser = new CSVParser(Files.newBufferedReader(drtLegs),
+			CSVFormat.Builder.create()
+				.setDelimiter(CsvOptions.detectDelimiter(drtLegs.toString()))
+				.setHeader().setSkipHeaderRecord(true)
+				.build());
+			 CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(directory.resolve(LEGS_OUTPUT)),
+				 CSVFormat.Builder.create().setHeader(LEG_INDEX, WAIT_TIME, RIDE_TIME).build())) {
+			for (CSVRecord csvRecord : parser) {
+				Person passenger = drtPlans.getPersons().get(Id.createPersonId(csvRecord.get("personId")));
+				double waitTime = Double.parseDouble(csvRecord.get("waitTime"));
+				double rideTime = Double.parseDouble(csvRecord.get("arrivalTime")) - Double.parseDouble(csvRecord.get("departureTime")) - waitTime;
+				printer.printRecord(passenger.getAttributes().getAttribute(LEG_INDEX), waitTime, rideTime);
+				legs++;
+			}
+		}
+		log.info("Wrote wait and ride times of {} simulated drt legs to {}", legs, directory.resolve(LEGS_OUTPUT));
+	}
+}
@@ -50,6 +50,8 @@ import java.util.Set;
 public class DrtAndIntermodalityOptions {
 	private static final Logger log = LogManager.getLogger(DrtAndIntermodalityOptions.class);
 	public static final String DRT_DUMMY_ACT_TYPE = "drt-split-trip";
+//	drt vehicle of the scenario, which is only needed for estimate and teleport and is not part of a real fleet
+	public static final String DRT_DUMMY_VEHICLE = "drtDummy";
 
 	@CommandLine.Option(names = "--drt-shp", description = "Path to shp file for adding drt not network links as an allowed mode.", defaultValue = "../drt-area/hoyerswerda-ruhland_Bhf-utm32N.shp")
 	private String drtAreaShp;
@@ -72,6 +74,15 @@ public class DrtAndIntermodalityOptions {
 	@CommandLine.Option(names = "--ride-time-std", description = "ride duration standard deviation", defaultValue = "0.3")
 	protected double rideTimeStd;
 
+	@CommandLine.Option(names = "--drt-full-sim-interval", description = "Run a drt only full simulation of the selected plans every n iterations and refit " +
+		"the drt estimator from its drt legs. The full simulation runs in a separate java process. All other iterations use estimate and teleport. " +
+		"Needs exactly one drt mode with name drt. 0 disables the full simulation.", defaultValue = "0")
+	private int fullSimInterval;
+
+	@CommandLine.Option(names = "--drt-full-sim-fleet-size", description = "Number of drt vehicles in the full simulation of --drt-full-sim-interval, " +
+		"if the scenario has no drt fleet apart from the dummy vehicle of estimate and teleport.", defaultValue = "30")
+	private int fullSimFleetSize;
+
 	@CommandLine.Option(names = "--intermodal", defaultValue = "ENABLED", description = "enable intermodality for DRT service")
 	private LausitzScenario.FunctionalityHandling intermodal;
 
@@ -201,7 +212,7 @@ public class DrtAndIntermodalityOptions {
 
 			scenario.getVehicles().addVehicleType(drtType);
 
-			Vehicle drtDummy = VehicleUtils.createVehicle(Id.createVehicleId("drtDummy"), drtType);
+			Vehicle drtDummy = VehicleUtils.createVehicle(Id.createVehicleId(DRT_DUMMY_VEHICLE), drtType);
 			drtDummy.getAttributes().putAttribute("dvrpMode", TransportMode.drt);
 			drtDummy.getAttributes().putAttribute("startLink", "706048410#0");
 			drtDummy.getAttributes().putAttribute("serviceBeginTime", 0.);
@@ -296,6 +307,14 @@ public class DrtAndIntermodalityOptions {
 		return rideTimeStd;
 	}
 
+	public int getFullSimInterval() {
+		return fullSimInterval;
+	}
+
+	public int getFullSimFleetSize() {
+		return fullSimFleetSize;
+	}
+
 	public LausitzScenario.FunctionalityHandling getFareHandling() {
 		return fare;
 	}
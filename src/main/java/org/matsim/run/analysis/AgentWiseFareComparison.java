@@ -11,11 +11,17 @@ import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.utils.EventsMultiplexer;
+import org.matsim.utils.ParallelTasks;
+import org.matsim.utils.SharedEventsAnalysis;
 import picocli.CommandLine;
 
 import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Future;
 
 import static org.matsim.application.ApplicationUtils.globFile;
 import static org.matsim.run.analysis.PtLineAnalysis.getCsvFormat;
@@ -30,9 +36,8 @@ public class AgentWiseFareComparison implements MATSimAppCommand {
 	private Path basePath;
 	@CommandLine.Option(names = "--prefix", description = "Prefix for filtered events output file, optional.", defaultValue = "")
 	private String prefix;
-
-	private static final String POLICY = "policy";
-	private static final String BASE = "base";
+	@CommandLine.Option(names = "--threads", description = "Number of policy runs to compare in parallel.", defaultValue = "1")
+	private int threads;
 
 	public static void main(String[] args) {
 		new AgentWiseFareComparison().execute(args);
@@ -41,95 +46,109 @@ public class AgentWiseFareComparison implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 		String pattern = "*" + prefix + "output_events.xml.gz";
-		String baseEventsFile = globFile(basePath, pattern).toString();
-
-		//			read base case events
-		Map<Id<Person>, FareData> baseFareDataMap = new HashMap<>();
-		FareEventHandler baseHandler = new FareEventHandler(baseFareDataMap);
-
-		EventsManager baseManager = EventsUtils.createEventsManager();
-		baseManager.addHandler(baseHandler);
-		baseManager.initProcessing();
-
-		MatsimEventsReader baseReader = new MatsimEventsReader(baseManager);
-		baseReader.readFile(baseEventsFile);
-		baseManager.finishProcessing();
-
-		for(Path inputPath : inputPaths) {
-			log.info("Running on {}", inputPath);
-//			read policy case events
-			String eventsFile = globFile(inputPath, pattern).toString();
-			Map<Id<Person>, FareData> policyFareDataMap = new HashMap<>();
-
-			EventsManager manager = EventsUtils.createEventsManager();
-			manager.addHandler(new FareEventHandler(policyFareDataMap));
-			MatsimEventsReader policyReader = new MatsimEventsReader(manager);
-			policyReader.readFile(eventsFile);
-			manager.finishProcessing();
-
-//			bring base and policy maps together
-			Map<Id<Person>, Map<String, FareData>> combinedFareData = new HashMap<>();
-
-			for (Map.Entry<Id<Person>, FareData> entry : baseFareDataMap.entrySet()) {
-				combinedFareData.put(entry.getKey(), new HashMap<>());
-				combinedFareData.get(entry.getKey()).put(BASE, entry.getValue());
-			}
 
-			for (Map.Entry<Id<Person>, FareData> entry : policyFareDataMap.entrySet()) {
-//				if combined map does not contain policy person, the person did not use pt in base case
-//				thus, we add base case agent with null values
-				if (!combinedFareData.containsKey(entry.getKey())) {
-					combinedFareData.put(entry.getKey(), new HashMap<>());
-					combinedFareData.get(entry.getKey()).put(BASE, new FareData(entry.getKey(), 0., null, null, 0.));
-				}
-				combinedFareData.get(entry.getKey()).put(POLICY, entry.getValue());
+//		base case events are read concurrently to the events of the policy runs
+		Future<FareAccumulator> baseFares = readBaseFaresAsync();
+
+//		the base case fares are only read from here on and can be shared by all policy runs. The policy fares are read first,
+//		so that reading them is not delayed until the base case is done
+		return ParallelTasks.runAll(inputPaths, threads, inputPath -> {
+			FareAccumulator policyFares = readFares(globFile(inputPath, pattern).toString());
+			return writeComparison(inputPath, ParallelTasks.get(baseFares, "base fares"), policyFares);
+		});
+	}
+
+	/**
+	 * Start reading the fares of the base case in the background. The result can be shared by the comparisons of several policy runs.
+	 */
+	Future<FareAccumulator> readBaseFaresAsync() {
+		String eventsFile = globFile(basePath, "*" + prefix + "output_events.xml.gz").toString();
+		return ParallelTasks.computeAsync("reading fares of " + eventsFile, () -> readFares(eventsFile));
+	}
+
+	/**
+	 * Create the comparison of the given policy run for a shared pass over its events with other analyses, see {@link EventsMultiplexer}.
+	 *
+	 * @param baseFares fares of the base case, see {@link #readBaseFaresAsync()}, which are read once for all policy runs
+	 */
+	SharedEventsAnalysis createSharedAnalysis(Path runDirectory, Future<FareAccumulator> baseFares) {
+		FareAccumulator policyFares = new FareAccumulator();
+
+		return new SharedEventsAnalysis() {
+			@Override
+			public List<EventHandler> createHandlers() {
+				return List.of(policyFares);
 			}
 
-//			the remaining fare data maps in combinedFareData with 1 entry only are agents who used pt in base case
-//			but no pt/drt in policy. we add null values for them in policy case
-			for (Map.Entry<Id<Person>, Map<String, FareData>> entry : combinedFareData.entrySet()) {
-				if (entry.getValue().size() == 1) {
-					combinedFareData.get(entry.getKey()).put(POLICY, new FareData(entry.getKey(), 0., null, null, 0.));
-				} else if (entry.getValue().isEmpty() || entry.getValue().size() > 2) {
-					log.fatal("Size of fare data element map should be 1 or 2 but is {}! Please check your data.", entry.getValue().size());
-					return 2;
-				}
+			@Override
+			public int finish() throws IOException, InterruptedException {
+				return writeComparison(runDirectory, ParallelTasks.get(baseFares, "base fares"), policyFares);
 			}
+		};
+	}
+
+	private static FareAccumulator readFares(String eventsFile) {
+		FareAccumulator fares = new FareAccumulator();
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(fares);
+		manager.initProcessing();
+
+		MatsimEventsReader reader = new MatsimEventsReader(manager);
+		reader.readFile(eventsFile);
+		manager.finishProcessing();
+		return fares;
+	}
 
-			String output = inputPath.resolve("output_agent_wise_fare_comparison_to_base.tsv").toString();
-
-			try (CSVPrinter printer = new CSVPrinter(new FileWriter(output), getCsvFormat())) {
-				printer.printRecord("personId",
-					"fareBase", "farePolicy", "fareDelta",
-					"refundBase", "refundPolicy", "refundDelta",
-					"totalBase", "totalPolicy", "totalDelta",
-					"purposeBase", "purposePolicy",
-					"typeBase", "typePolicy");
-
-				for (Map.Entry<Id<Person>, Map<String, FareData>> entry : combinedFareData.entrySet()) {
-					FareData baseFareData = entry.getValue().get(BASE);
-					FareData policyFareData = entry.getValue().get(POLICY);
-					double totalFareBase = baseFareData.amount + baseFareData.refund;
-					double totalFarePolicy = policyFareData.amount + policyFareData.refund;
-
-					printer.printRecord(entry.getKey().toString(),
-						baseFareData.amount, policyFareData.amount, policyFareData.amount - baseFareData.amount,
-						baseFareData.refund, policyFareData.refund, policyFareData.refund - baseFareData.refund,
-						totalFareBase, totalFarePolicy, totalFarePolicy - totalFareBase,
-						baseFareData.purpose, policyFareData.purpose,
-						baseFareData.fareType, policyFareData.fareType);
+	private static int writeComparison(Path inputPath, FareAccumulator base, FareAccumulator policy) throws IOException {
+		String output = inputPath.resolve("output_agent_wise_fare_comparison_to_base.tsv").toString();
+
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output), getCsvFormat())) {
+			printer.printRecord("personId",
+				"fareBase", "farePolicy", "fareDelta",
+				"refundBase", "refundPolicy", "refundDelta",
+				"totalBase", "totalPolicy", "totalDelta",
+				"purposeBase", "purposePolicy",
+				"typeBase", "typePolicy");
+
+//			one pass over the person indices of both cases. agents without fare in one of the cases get zero values and no purpose or type there
+			int size = Math.max(base.persons.length, policy.persons.length);
+			for (int i = 0; i < size; i++) {
+				Id<Person> personId = base.getPerson(i) != null ? base.getPerson(i) : policy.getPerson(i);
+				if (personId == null) {
+					continue;
 				}
+
+				double fareBase = base.getAmount(i);
+				double farePolicy = policy.getAmount(i);
+				double refundBase = base.getRefund(i);
+				double refundPolicy = policy.getRefund(i);
+				double totalFareBase = fareBase + refundBase;
+				double totalFarePolicy = farePolicy + refundPolicy;
+
+				printer.printRecord(personId.toString(),
+					fareBase, farePolicy, farePolicy - fareBase,
+					refundBase, refundPolicy, refundPolicy - refundBase,
+					totalFareBase, totalFarePolicy, totalFarePolicy - totalFareBase,
+					base.getPurpose(i), policy.getPurpose(i),
+					base.getFareType(i), policy.getFareType(i));
 			}
 		}
+		log.info("Fare comparison written to {}", output);
 		return 0;
 	}
 
-	private static final class FareEventHandler implements PersonMoneyEventHandler {
-		private final Map<Id<Person>, FareData> fareDataMap;
-
-		FareEventHandler(Map<Id<Person>, FareData> fareDataMap) {
-			this.fareDataMap = fareDataMap;
-		}
+	/**
+	 * Fares and refunds of all persons, stored in arrays indexed by {@link Id#index()} of the person.
+	 * Purpose and fare type are taken from the first fare event of a person.
+	 */
+	static final class FareAccumulator implements PersonMoneyEventHandler {
+		@SuppressWarnings("unchecked")
+		private Id<Person>[] persons = new Id[Math.max(16, Id.getNumberOfIds(Person.class))];
+		private double[] amounts = new double[persons.length];
+		private double[] refunds = new double[persons.length];
+		private String[] purposes = new String[persons.length];
+		private String[] fareTypes = new String[persons.length];
 
 		@Override
 		public void handleEvent(PersonMoneyEvent event) {
@@ -138,29 +157,56 @@ public class AgentWiseFareComparison implements MATSimAppCommand {
 
 			if (event.getEventType().equals(PersonMoneyEvent.EVENT_TYPE) &&
 			event.getPurpose().contains("fare")) {
-//				initialize data element if not in map
-				fareDataMap.putIfAbsent(event.getPersonId(),
-					new FareData(event.getPersonId(), 0., event.getPurpose(), event.getTransactionPartner(), 0.));
+				int index = event.getPersonId().index();
+				ensureCapacity(index);
+
+//				initialize data element if not seen yet
+				if (persons[index] == null) {
+					persons[index] = event.getPersonId();
+					purposes[index] = event.getPurpose();
+					fareTypes[index] = event.getTransactionPartner();
+				}
 
 				if (!event.getPurpose().contains("refund")) {
 //					if not refund = we are handling a fare
-					fareDataMap.put(event.getPersonId(), fareDataMap.get(event.getPersonId()).updateAmount(event.getAmount()));
+					amounts[index] += event.getAmount();
 				} else {
 //					refund
-					fareDataMap.put(event.getPersonId(), fareDataMap.get(event.getPersonId()).updateRefund(event.getAmount()));
+					refunds[index] += event.getAmount();
 				}
 			}
 
 		}
-	}
 
-	private record FareData(Id<Person> personId, double amount, String purpose, String fareType, double refund) {
-		private FareData updateAmount(double amount) {
-			return new FareData(this.personId, this.amount + amount, this.purpose, this.fareType, this.refund);
+		private void ensureCapacity(int index) {
+			if (index >= persons.length) {
+				int length = Math.max(index + 1, persons.length * 2);
+				persons = Arrays.copyOf(persons, length);
+				amounts = Arrays.copyOf(amounts, length);
+				refunds = Arrays.copyOf(refunds, length);
+				purposes = Arrays.copyOf(purposes, length);
+				fareTypes = Arrays.copyOf(fareTypes, length);
+			}
+		}
+
+		private Id<Person> getPerson(int index) {
+			return index < persons.length ? persons[index] : null;
+		}
+
+		private double getAmount(int index) {
+			return index < amounts.length ? amounts[index] : 0.;
+		}
+
+		private double getRefund(int index) {
+			return index < refunds.length ? refunds[index] : 0.;
+		}
+
+		private String getPurpose(int index) {
+			return index < purposes.length ? purposes[index] : null;
 		}
 
-		private FareData updateRefund(double refund) {
-			return new FareData(this.personId, this.amount, this.purpose, this.fareType, this.refund + refund);
+		private String getFareType(int index) {
+			return index < fareTypes.length ? fareTypes[index] : null;
 		}
 	}
 }
@@ -0,0 +1,151 @@
+package org.matsim.run.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.utils.EventsMultiplexer;
+import org.matsim.utils.ExcludeEventTypes;
+import org.matsim.utils.FilterEventsForSpecificAgents;
+import org.matsim.utils.ParallelTasks;
+import org.matsim.utils.SharedEventsAnalysis;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+@CommandLine.Command(
+	name = "analysis-all",
+	description = "Run several post-run analyses, which need the events of a run, with a single pass over the events file." +
+		" The time spent in the event handlers of each analysis is logged, summed over all handlers of the analysis." +
+		" Tables and fares of the base case are read only once for all runs."
+)
+public class AllEventsAnalyses implements MATSimAppCommand {
+	private static final Logger log = LogManager.getLogger(AllEventsAnalyses.class);
+
+	private static final String PT_LINE = "pt-line";
+	private static final String FARE = "fare";
+	private static final String EXCLUDE_EVENTS = "exclude-events";
+	private static final String FILTER_EVENTS = "filter-events";
+
+	@CommandLine.Parameters(arity = "1..*", description = "Path to run output directories.")
+	private List<Path> inputPaths;
+	@CommandLine.Option(names = "--analyses", split = ",", required = true,
+		description = "Comma-separated list of analyses to run. Possible values: " + PT_LINE + ", " + FARE + ", " + EXCLUDE_EVENTS + ", " + FILTER_EVENTS + ".")
+	private List<String> analyses;
+	@CommandLine.Option(names = "--base-path", description = "Path to run directory of base case. Needed for " + PT_LINE + " and " + FARE + ".")
+	private Path basePath;
+	@CommandLine.Option(names = "--lines", split = ",", description = "Ids of the transit lines to analyze with " + PT_LINE + ".", defaultValue = "RE-VSP1")
+	private List<String> lines;
+	@CommandLine.Option(names = "--event-types", split = ",", description = "Comma-separated list of event types to filter out with " + EXCLUDE_EVENTS + ".")
+	private List<String> types;
+	@CommandLine.Option(names = "--keep-event-types", split = ",", description = "Comma-separated list of event types to keep with " + EXCLUDE_EVENTS + ".")
+	private List<String> keepTypes;
+	@CommandLine.Option(names = "--agents", description = "Path to csv file with agentIds for " + FILTER_EVENTS + ".")
+	private Path agentsPath;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
+	@CommandLine.Option(names = "--max-parallelism", description = "Maximum number of base case tables, which are read concurrently.", defaultValue = "4")
+	private int maxParallelism;
+
+	public static void main(String[] args) {
+		new AllEventsAnalyses().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		for (String analysis : analyses) {
+			if (!List.of(PT_LINE, FARE, EXCLUDE_EVENTS, FILTER_EVENTS).contains(analysis)) {
+				log.fatal("Unknown analysis {}. Possible values are {}, {}, {} and {}.", analysis, PT_LINE, FARE, EXCLUDE_EVENTS, FILTER_EVENTS);
+				return 2;
+			}
+		}
+
+//		the base case is read only once and shared by the analyses of all runs, the base fares are read in the background
+		Future<AgentWiseFareComparison.FareAccumulator> baseFares = analyses.contains(FARE)
+			? createFareComparison(inputPaths.getFirst()).readBaseFaresAsync() : null;
+		BaseCaseTables base = analyses.contains(PT_LINE) ? BaseCaseTables.load(requireBasePath(), maxParallelism) : null;
+
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> {
+			Map<String, SharedEventsAnalysis> shared = new LinkedHashMap<>();
+			for (String analysis : analyses) {
+				shared.put(analysis, createAnalysis(analysis, runDir, base, baseFares));
+			}
+
+//			all handlers are registered on one pass over the events, the table stages are run afterward
+			EventsMultiplexer.readEvents(globFile(runDir, "*output_events.xml.gz").toString(), shared);
+
+			int result = 0;
+			for (Map.Entry<String, SharedEventsAnalysis> e : shared.entrySet()) {
+				Instant start = Instant.now();
+				int code = e.getValue().finish();
+				log.info("Finished {} for {} with code {} after {} s", e.getKey(), runDir, code, Duration.between(start, Instant.now()).toSeconds());
+				if (code != 0 && result == 0) {
+					result = code;
+				}
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Create the analysis with the options of its own command, so that defaults and validation are the same as for a separate run.
+	 */
+	private SharedEventsAnalysis createAnalysis(String analysis, Path runDir, BaseCaseTables base,
+		Future<AgentWiseFareComparison.FareAccumulator> baseFares) throws Exception {
+		List<String> args = new ArrayList<>();
+		switch (analysis) {
+			case PT_LINE -> {
+				args.addAll(List.of("--base-path", requireBasePath().toString(), "--lines", String.join(",", lines)));
+				PtLineAnalysis command = new PtLineAnalysis();
+				new CommandLine(command).parseArgs(args.toArray(String[]::new));
+				return command.createSharedAnalysis(runDir, base);
+			}
+			case FARE -> {
+				return createFareComparison(runDir).createSharedAnalysis(runDir, baseFares);
+			}
+			case EXCLUDE_EVENTS -> {
+				if (types != null) {
+					args.addAll(List.of("--event-types", String.join(",", types)));
+				}
+				if (keepTypes != null) {
+					args.addAll(List.of("--keep-event-types", String.join(",", keepTypes)));
+				}
+				args.add(runDir.toString());
+				ExcludeEventTypes command = new ExcludeEventTypes();
+				new CommandLine(command).parseArgs(args.toArray(String[]::new));
+				return command.createSharedAnalysis(runDir);
+			}
+			case FILTER_EVENTS -> {
+				if (agentsPath == null) {
+					throw new IllegalArgumentException("Option --agents has to be defined for " + FILTER_EVENTS + "!");
+				}
+				args.addAll(List.of("--agents", agentsPath.toString(), runDir.toString()));
+				FilterEventsForSpecificAgents command = new FilterEventsForSpecificAgents();
+				new CommandLine(command).parseArgs(args.toArray(String[]::new));
+				return command.createSharedAnalysis(runDir);
+			}
+			default -> throw new IllegalArgumentException("Unknown analysis " + analysis + "!");
+		}
+	}
+
+	private AgentWiseFareComparison createFareComparison(Path runDir) {
+		AgentWiseFareComparison command = new AgentWiseFareComparison();
+		new CommandLine(command).parseArgs("--base-path", requireBasePath().toString(), runDir.toString());
+		return command;
+	}
+
+	private Path requireBasePath() {
+		if (basePath == null) {
+			throw new IllegalArgumentException("Option --base-path has to be defined for " + PT_LINE + " and " + FARE + "!");
+		}
+		return basePath;
+	}
+}
@@ -0,0 +1,166 @@
+package org.matsim.run.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.CommandSpec;
+import org.matsim.application.options.OutputOptions;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Result cache for analysis commands. The fingerprint of a command consists of its option values and, for every input file,
+ * the size, last modification time and a hash of the first bytes of the file. It is stored next to the produced files.
+ * If the fingerprint did not change and all produced files exist, the analysis does not need to be run again.
+ */
+public final class AnalysisCache {
+	private static final Logger log = LogManager.getLogger(AnalysisCache.class);
+
+	private static final String SUFFIX = ".fingerprint";
+	private static final int HEADER_BYTES = 64 * 1024;
+	private static final Set<String> IGNORED_OPTIONS = Set.of("--force", "--policy-paths");
+
+	private final String command;
+	private final Path fingerprintFile;
+	private final List<Path> producedFiles;
+	private final String fingerprint;
+
+	private AnalysisCache(String command, Path fingerprintFile, List<Path> producedFiles, String fingerprint) {
+		this.command = command;
+		this.fingerprintFile = fingerprintFile;
+		this.producedFiles = producedFiles;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Compute the fingerprint of a command. The options {@code --force} and {@code --policy-paths} are not part of the fingerprint,
+	 * the analyzed run is identified by the input files.
+	 * The produced files are taken from the {@link CommandSpec} annotation of the command.
+	 *
+	 * @param spec   picocli spec of the command, needed to retrieve all option values
+	 * @param output output options of the command
+	 * @param inputs all input files of the command
+	 */
+	static AnalysisCache create(CommandLine.Model.CommandSpec spec, OutputOptions output, List<Path> inputs) throws IOException {
+		return create(spec, output::getPath, inputs);
+	}
+
+	/**
+	 * Compute the fingerprint of a command, which writes its produced files to the given directory, e.g. the output directory of one policy case.
+	 */
+	static AnalysisCache create(CommandLine.Model.CommandSpec spec, Path outputDirectory, List<Path> inputs) throws IOException {
+		return create(spec, outputDirectory::resolve, inputs);
+	}
+
+	private static AnalysisCache create(CommandLine.Model.CommandSpec spec, Function<String, Path> outputPath, List<Path> inputs) throws IOException {
+		List<Path> producedFiles = Arrays.stream(spec.userObject().getClass().getAnnotation(CommandSpec.class).produces())
+			.map(outputPath)
+			.toList();
+
+		MessageDigest digest = createDigest();
+		update(digest, spec.name());
+
+		spec.options().stream()
+			.filter(o -> !IGNORED_OPTIONS.contains(o.longestName()))
+			.sorted(Comparator.comparing(CommandLine.Model.OptionSpec::longestName))
+			.forEach(o -> update(digest, o.longestName() + "=" + o.getValue()));
+
+		for (Path input : inputs) {
+			update(digest, input.toAbsolutePath() + ":" + Files.size(input) + ":" + Files.getLastModifiedTime(input).toMillis());
+			try (InputStream in = Files.newInputStream(input)) {
+				digest.update(in.readNBytes(HEADER_BYTES));
+			}
+		}
+
+		Path outputDirectory = producedFiles.getFirst().toAbsolutePath().getParent();
+		return new AnalysisCache(spec.name(), outputDirectory.resolve("." + spec.name() + SUFFIX), producedFiles,
+			HexFormat.of().formatHex(digest.digest()));
+	}
+
+	/**
+	 * Run the analysis unless it is up to date or {@code force} is set. The fingerprint is stored if the analysis returns 0.
+	 */
+	int runIfChanged(boolean force, Callable<Integer> analysis) throws Exception {
+		if (!force && isUpToDate()) {
+			log.info("Inputs and options of {} in {} have not changed, skipping. Use --force to run it anyway.", command, fingerprintFile.getParent());
+			return 0;
+		}
+
+		int result = analysis.call();
+		if (result == 0) {
+			store();
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the stored fingerprint equals the current one and all produced files exist.
+	 */
+	boolean isUpToDate() throws IOException {
+		if (!Files.exists(fingerprintFile) || !Files.readString(fingerprintFile).strip().equals(fingerprint)) {
+			return false;
+		}
+		for (Path file : producedFiles) {
+			if (!Files.exists(file)) {
+				log.info("Output {} of command {} is missing, analysis needs to be run again.", file, command);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Store the fingerprint after a successful run.
+	 */
+	void store() throws IOException {
+		Files.createDirectories(fingerprintFile.getParent());
+		Files.writeString(fingerprintFile, fingerprint);
+	}
+
+	/**
+	 * Delete all stored fingerprints below the given directory, so that all analyses are run again.
+	 *
+	 * @return number of deleted fingerprints
+	 */
+	public static int clear(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+
+		int deleted = 0;
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+				Files.delete(file);
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.matsim.run.analysis;
+
+import org.matsim.utils.ParallelTasks;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+/**
+ * Persons and trips of a base case, which are shared by the analyses of several policy cases.
+ * The tables are read once and must not be modified. Every policy analysis derives its own tables from them, e.g. with
+ * {@link Table#where} or {@link StreamingTableJoin#align}, which create new tables.
+ */
+record BaseCaseTables(Table persons, Table trips) {
+//	logical names of the input tables, so that tables of the same file (e.g. if base and policy directory are equal) are kept apart
+	static final String PERSONS = "persons";
+	static final String TRIPS = "trips";
+	static final String BASE_PERSONS = "basePersons";
+	static final String BASE_TRIPS = "baseTrips";
+
+	/**
+	 * Read persons and trips of the base case concurrently. Only the columns needed by the comparison analyses are kept.
+	 */
+	static BaseCaseTables load(Path basePath, int maxParallelism) throws IOException, InterruptedException {
+		String basePersonsPath = globFile(basePath, "*output_persons.csv.gz").toString();
+		String baseTripsPath = globFile(basePath, "*output_trips.csv.gz").toString();
+
+		Map<String, Table> tables = ParallelTasks.computeAll(maxParallelism, Map.of(
+			BASE_PERSONS, () -> OutputTableReader.of(basePersonsPath).columns(PtLineAnalysis.PERSON_COLUMNS).read(),
+			BASE_TRIPS, () -> PtLineAnalysis.addTimeColumns(OutputTableReader.of(baseTripsPath).columns(PtLineAnalysis.TRIP_COLUMNS).read())));
+
+		return new BaseCaseTables(tables.get(BASE_PERSONS), tables.get(BASE_TRIPS));
+	}
+
+	/**
+	 * Run the analysis of every policy case with at most {@code maxParallelism} policies in parallel, see {@link ParallelTasks#runAll}.
+	 * Each policy writes its results to {@code <policy run directory>/analysis/<name>}.
+	 * Failing policies are logged and do not stop the others.
+	 *
+	 * @return 0 if all policies were analyzed successfully, the first non-zero return code otherwise
+	 */
+	static int runPolicies(List<Path> policyPaths, String name, int maxParallelism, PolicyAnalysis analysis) throws InterruptedException {
+		return ParallelTasks.runAll(policyPaths, maxParallelism, policyPath -> {
+			Path outputDirectory = policyPath.resolve("analysis").resolve(name);
+			Files.createDirectories(outputDirectory);
+			return analysis.analyze(policyPath, outputDirectory);
+		});
+	}
+
+	/**
+	 * Analysis of one policy case against the shared base case.
+	 */
+	@FunctionalInterface
+	interface PolicyAnalysis {
+
+		/**
+		 * Analyze the given policy run and write the results to the output directory.
+		 */
+		int analyze(Path policyPath, Path outputDirectory) throws Exception;
+	}
+}
@@ -1,17 +1,19 @@
 package org.matsim.run.analysis;
 
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.lang3.Range;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.MATSimAppCommand;
-import org.matsim.application.options.CsvOptions;
 import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.application.options.ShpOptions;
@@ -21,18 +23,20 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.gis.GeoFileWriter;
-import org.matsim.core.utils.io.IOUtils;
 import org.matsim.run.DrtAndIntermodalityOptions;
+import org.matsim.utils.ParallelTasks;
+import org.matsim.utils.ShpZoneIndex;
 import picocli.CommandLine;
 import tech.tablesaw.api.*;
 import tech.tablesaw.columns.Column;
-import tech.tablesaw.io.csv.CsvReadOptions;
 import tech.tablesaw.selection.Selection;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static org.matsim.application.ApplicationUtils.globFile;
 import static tech.tablesaw.aggregate.AggregateFunctions.*;
@@ -62,24 +66,36 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 	private Path basePath;
 	@CommandLine.Option(names = "--dist-groups", split = ",", description = "List of distances for binning", defaultValue = "0,1000,2000,5000,10000,20000")
 	private List<Double> distGroups;
+	@CommandLine.Option(names = "--skip-empty-od", description = "Skip zone relations without any drt leg when writing the drt OD matrix.", defaultValue = "false")
+	private boolean skipEmptyOdRelations;
+	@CommandLine.Option(names = "--max-parallelism", description = "Maximum number of input tables, which are read concurrently.", defaultValue = "4")
+	private int maxParallelism;
+	@CommandLine.Option(names = "--policy-paths", split = ",", description = "Run directories of several drt policy cases, which are compared to the same base case." +
+		" The base case is read only once. Results are written to <policy>/analysis/drt, policies which have not changed since the last run are skipped.")
+	private List<Path> policyPaths = new ArrayList<>();
+	@CommandLine.Option(names = "--force", description = "Run the analysis even if inputs and options have not changed since the last run.", defaultValue = "false")
+	private boolean force;
+	@CommandLine.Spec
+	private CommandLine.Model.CommandSpec spec;
+
+//	output directory of a policy case in batch mode, otherwise the output options are used
+	private Path outputDirectory;
 
 	private static final String INCOME_GROUP = "incomeGroup";
 	private static final String PERSON = "person";
 	private static final String SHARE = "share";
 	private static final String SCORE = "executed_score";
-	private static final String INCOME = "income";
 	private static final String TRAV_TIME = "trav_time";
 	private static final String TRAV_DIST = "traveled_distance";
-	private static final String EUCL_DIST = "euclidean_distance";
 	private static final String MAIN_MODE = "main_mode";
 	private static final String TRIP_ID = "trip_id";
 	private static final String BASE_SUFFIX = "_base";
 	private static final String DIST_GROUP = "dist_group";
-	private static final String DEPARTURE_H = "departureHour";
 	private static final String DEPARTURE_TIME = "departureTime";
 	private static final String PERSON_ID = "personId";
 	private static final String DRT_PREFIX = "drt_persons_";
 	private static final String ORIG_ZONE_ID = "originZoneId";
+	private static final String DRT_LEGS = "drtLegs";
 	private static final String DEST_ZONE_ID = "destinationZoneId";
 
 	public static void main(String[] args) {
@@ -88,32 +104,153 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 
 	@Override
 	public Integer call() throws Exception {
+		if (policyPaths.isEmpty()) {
+//			the analysis is skipped if neither inputs nor options have changed since the last run
+			return AnalysisCache.create(spec, output, getInputs(input.getRunDirectory()))
+				.runIfChanged(force, () -> analyze(input.getRunDirectory(), null));
+		}
+
+//		the base case is read only once and shared by all policy cases, every policy case is skipped if it has not changed
+		BaseCaseTables base = BaseCaseTables.load(basePath, maxParallelism);
+		return BaseCaseTables.runPolicies(policyPaths, "drt", maxParallelism,
+			(policyPath, policyOutput) -> AnalysisCache.create(spec, policyOutput, getInputs(policyPath))
+				.runIfChanged(force, () -> forPolicy(policyOutput).analyze(policyPath, base)));
+	}
+
+	/**
+	 * Input files of the analysis of the given run, including the drt service area read from its config.
+	 */
+	private List<Path> getInputs(Path runDirectory) {
+		Path configPath = globFile(runDirectory, "*output_config.xml");
+		List<Path> inputs = new ArrayList<>(List.of(
+			globFile(runDirectory, "*output_persons.csv.gz"),
+			globFile(runDirectory, "*output_trips.csv.gz"),
+			globFile(runDirectory, "*output_drt_legs_drt.csv"),
+			configPath,
+			globFile(basePath, "*output_persons.csv.gz"),
+			globFile(basePath, "*output_trips.csv.gz")));
+
+		String shpPath = new DrtAndIntermodalityOptions().getDrtServiceAreaShpPathFromConfig(ConfigUtils.loadConfig(configPath.toString()));
+		if (shpPath != null) {
+//			the attributes of the shapefile are stored in the dbf file next to it
+			Path shp = Path.of(shpPath);
+			inputs.add(shp);
+			Path dbf = shp.resolveSibling(shp.getFileName().toString().replace(".shp", ".dbf"));
+			if (Files.exists(dbf)) {
+				inputs.add(dbf);
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Create a copy of this analysis with the same options, which writes to the given directory.
+	 * Every policy needs its own copy, because the binning lists are modified during the analysis.
+	 */
+	private LausitzDrtAnalysis forPolicy(Path policyOutput) {
+		LausitzDrtAnalysis analysis = new LausitzDrtAnalysis();
+		analysis.incomeGroups = new ArrayList<>(incomeGroups);
+		analysis.ageGroups = new ArrayList<>(ageGroups);
+		analysis.distGroups = new ArrayList<>(distGroups);
+		analysis.basePath = basePath;
+		analysis.skipEmptyOdRelations = skipEmptyOdRelations;
+		analysis.maxParallelism = maxParallelism;
+		analysis.outputDirectory = policyOutput;
+		return analysis;
+	}
+
+	/**
+	 * Analyze one policy run. If no shared base case tables are given, the needed rows of the base case are read.
+	 */
+	private int analyze(Path runDirectory, BaseCaseTables base) throws IOException, InterruptedException {
 //		create pt line analysis object to use handy methods
-		PtLineAnalysis ptLineAnalysis = new PtLineAnalysis(incomeGroups, ageGroups, output);
+		PtLineAnalysis ptLineAnalysis = outputDirectory != null
+			? new PtLineAnalysis(incomeGroups, ageGroups, outputDirectory)
+			: new PtLineAnalysis(incomeGroups, ageGroups, output);
 
 //		all necessary file input paths are defined here
-		String personsPath = globFile(input.getRunDirectory(), "*output_persons.csv.gz").toString();
-		String tripsPath = globFile(input.getRunDirectory(), "*output_trips.csv.gz").toString();
-		String drtLegsPath = globFile(input.getRunDirectory(), "*output_drt_legs_drt.csv").toString();
-		String configPath = globFile(input.getRunDirectory(), "*output_config.xml").toString();
+		String personsPath = globFile(runDirectory, "*output_persons.csv.gz").toString();
+		String tripsPath = globFile(runDirectory, "*output_trips.csv.gz").toString();
+		String drtLegsPath = globFile(runDirectory, "*output_drt_legs_drt.csv").toString();
+		String configPath = globFile(runDirectory, "*output_config.xml").toString();
 		String basePersonsPath = globFile(basePath, "*output_persons.csv.gz").toString();
 		String baseTripsPath = globFile(basePath, "*output_trips.csv.gz").toString();
 
-		Table fullPersons = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(personsPath))
-			.columnTypesPartial(Map.of(PERSON, ColumnType.TEXT, SCORE, ColumnType.DOUBLE, INCOME, ColumnType.DOUBLE))
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(personsPath)).build());
+//		get shp of drt service area
+		Config config = ConfigUtils.loadConfig(configPath);
+		ShpOptions drtServiceArea = null;
+		for (DrtConfigGroup drtCfg : ConfigUtils.addOrGetModule(config, MultiModeDrtConfigGroup.class).getModalElements()) {
+			if (drtCfg.getMode().equals(TransportMode.drt)) {
+				drtServiceArea = new ShpOptions(Path.of(new DrtAndIntermodalityOptions().getDrtServiceAreaShpPathFromConfig(config)), null, null);
+				break;
+			}
+		}
+
+//		write service area to shp
+		GeoFileWriter.writeGeometries(drtServiceArea.readFeatures(), getOutputPath("serviceArea.shp").toString());
+//		shp and dbf have the same file name and OutputOptions does not allow us to use an option twice, so we have to do this workaround by copying the dbf file
+		Files.copy(Path.of(getOutputPath("serviceArea.shp").toString().replace(".shp", ".dbf")),
+			getOutputPath("serviceArea1.dbf"), StandardCopyOption.REPLACE_EXISTING);
+
+		Geometry geometry = drtServiceArea.getGeometry();
+		Envelope serviceAreaBounds = geometry.getEnvelopeInternal();
+
+//		persons and drt legs are read concurrently. The drt users are needed to filter all other tables.
+		Map<String, Table> tables = ParallelTasks.computeAll(maxParallelism, Map.of(
+			BaseCaseTables.PERSONS, () -> OutputTableReader.of(personsPath)
+				.columns(PtLineAnalysis.PERSON_COLUMNS)
+//				filter for real agents only, no freight agents!
+				.filter(OutputTableReader.RowPredicate.excludeFreight(PERSON))
+				.read(),
+			DRT_LEGS, () -> OutputTableReader.of(drtLegsPath)
+				.columns(Map.of(DEPARTURE_TIME, ColumnType.DOUBLE, "fromX", ColumnType.DOUBLE, "fromY", ColumnType.DOUBLE,
+					"toX", ColumnType.DOUBLE, "toY", ColumnType.DOUBLE, PERSON_ID, ColumnType.TEXT, "arrivalTime", ColumnType.DOUBLE))
+				.read()));
+
+		Table fullPersons = tables.get(BaseCaseTables.PERSONS);
+		Table drtLegs = tables.get(DRT_LEGS);
+		Set<String> drtPersonIds = new HashSet<>(drtLegs.textColumn(PERSON_ID).asList());
+
+//		base persons, policy trips and base trips only depend on the drt users and are read concurrently as well
+		Map<String, Callable<Table>> inputs = new HashMap<>(Map.of(
+//			only trips of non-freight agents, which are either performed by drt users or start / end near the service area are needed
+			BaseCaseTables.TRIPS, () -> PtLineAnalysis.addTimeColumns(OutputTableReader.of(tripsPath)
+				.columns(PtLineAnalysis.TRIP_COLUMNS)
+				.columns(Map.of("start_x", ColumnType.DOUBLE, "start_y", ColumnType.DOUBLE, "end_x", ColumnType.DOUBLE, "end_y", ColumnType.DOUBLE))
+				.filter(OutputTableReader.RowPredicate.excludeFreight(PERSON))
+				.filter(OutputTableReader.RowPredicate.isIn(PERSON, drtPersonIds)
+					.or(OutputTableReader.RowPredicate.withinBoundingBox(serviceAreaBounds, "start_x", "start_y"))
+					.or(OutputTableReader.RowPredicate.withinBoundingBox(serviceAreaBounds, "end_x", "end_y")))
+				.read())));
+
+		if (base == null) {
+			inputs.put(BaseCaseTables.BASE_PERSONS, () -> OutputTableReader.of(basePersonsPath)
+				.columns(PtLineAnalysis.PERSON_COLUMNS)
+				.filter(OutputTableReader.RowPredicate.isIn(PERSON, drtPersonIds))
+				.read());
+//			drt trips can only be performed by drt users, the exact trips are selected below
+			inputs.put(BaseCaseTables.BASE_TRIPS, () -> PtLineAnalysis.addTimeColumns(OutputTableReader.of(baseTripsPath)
+				.columns(PtLineAnalysis.TRIP_COLUMNS)
+				.filter(OutputTableReader.RowPredicate.isIn(PERSON, drtPersonIds))
+				.read()));
+		}
+		tables = ParallelTasks.computeAll(maxParallelism, inputs);
+
+		Table trips = tables.get(BaseCaseTables.TRIPS);
+		Table basePersons;
+		Table baseTrips;
+		if (base == null) {
+			basePersons = tables.get(BaseCaseTables.BASE_PERSONS);
+			baseTrips = tables.get(BaseCaseTables.BASE_TRIPS);
+		} else {
+			basePersons = base.persons().where(base.persons().textColumn(PERSON).isIn(drtPersonIds));
+			baseTrips = base.trips().where(base.trips().textColumn(PERSON).isIn(drtPersonIds));
+		}
 
 		Map<String, Range<Integer>> incomeLabels = ptLineAnalysis.getLabels(incomeGroups);
 		incomeLabels.put(incomeGroups.getLast() + "+", Range.of(incomeGroups.getLast(), 9999999));
 		incomeGroups.add(Integer.MAX_VALUE);
 
-//		filter for real agents only, no freight agents!
-		Table freightPersons = fullPersons.where(fullPersons.textColumn(PERSON).containsString("commercialPersonTraffic")
-			.or(fullPersons.textColumn(PERSON).containsString("freight"))
-			.or(fullPersons.textColumn(PERSON).containsString("goodsTraffic")));
-		fullPersons = fullPersons.where(fullPersons.textColumn(PERSON).isNotIn(freightPersons.textColumn(PERSON)));
-
 		//		add income group column to persons table for further analysis
 		fullPersons = ptLineAnalysis.addIncomeGroupColumnToTable(fullPersons, incomeLabels);
 
@@ -121,28 +258,9 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 		ptLineAnalysis.writeIncomeDistr(fullPersons, incomeLabels, "all_persons_income_groups.csv", null);
 		ptLineAnalysis.writeAgeDistr(fullPersons, "all_persons_age_groups.csv", null);
 
-		Map<String, ColumnType> columnTypes = new HashMap<>(Map.of(PERSON, ColumnType.TEXT,
-			TRAV_TIME, ColumnType.STRING, "dep_time", ColumnType.STRING, MAIN_MODE, ColumnType.STRING,
-			TRAV_DIST, ColumnType.DOUBLE, EUCL_DIST, ColumnType.DOUBLE, TRIP_ID, ColumnType.STRING));
-
-		Table drtLegs = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(drtLegsPath))
-			.columnTypesPartial(Map.of(DEPARTURE_TIME, ColumnType.DOUBLE, "fromX", ColumnType.DOUBLE, "fromY", ColumnType.DOUBLE,
-				"toX", ColumnType.DOUBLE, "toY", ColumnType.DOUBLE, PERSON_ID, ColumnType.TEXT, "arrivalTime", ColumnType.DOUBLE))
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(tripsPath)).build());
-
 //		filter for persons, which used the new drt service only
 		TextColumn personColumn = fullPersons.textColumn(PERSON);
-		Table persons = fullPersons.where(personColumn.isIn(drtLegs.textColumn(PERSON_ID)));
-
-		//		read base persons and filter them
-		Table basePersons = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(basePersonsPath))
-			.columnTypesPartial(Map.of(PERSON, ColumnType.TEXT, SCORE, ColumnType.DOUBLE, INCOME, ColumnType.DOUBLE))
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(basePersonsPath)).build());
-
-		TextColumn basePersonColumn = basePersons.textColumn(PERSON);
-		basePersons = basePersons.where(basePersonColumn.isIn(drtLegs.textColumn(PERSON_ID)));
+		Table persons = fullPersons.where(personColumn.isIn(drtPersonIds));
 
 		ptLineAnalysis.writeComparisonTable(persons, basePersons, SCORE, PERSON, DRT_PREFIX);
 
@@ -170,34 +288,7 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 //		write scores per income group
 		ptLineAnalysis.writeScorePerIncomeGroupDistr(scoresPerIncomeGroup, incomeLabels, DRT_PREFIX);
 
-		Table trips = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(tripsPath))
-			.columnTypesPartial(columnTypes)
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(tripsPath)).build());
-
-		Table baseTrips = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(baseTripsPath))
-			.columnTypesPartial(columnTypes)
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(baseTripsPath)).build());
-
-//		get shp of drt service area
-		Config config = ConfigUtils.loadConfig(configPath);
-		ShpOptions drtServiceArea = null;
-		for (DrtConfigGroup drtCfg : ConfigUtils.addOrGetModule(config, MultiModeDrtConfigGroup.class).getModalElements()) {
-			if (drtCfg.getMode().equals(TransportMode.drt)) {
-				drtServiceArea = new ShpOptions(Path.of(new DrtAndIntermodalityOptions().getDrtServiceAreaShpPathFromConfig(config)), null, null);
-				break;
-			}
-		}
-
-//		write service area to shp
-		GeoFileWriter.writeGeometries(drtServiceArea.readFeatures(), output.getPath("serviceArea.shp").toString());
-//		shp and dbf have the same file name and OutputOptions does not allow us to use an option twice, so we have to do this workaround by copying the dbf file
-		Files.copy(Path.of(output.getPath("serviceArea.shp").toString().replace(".shp", ".dbf")),
-			output.getPath("serviceArea1.dbf"), StandardCopyOption.REPLACE_EXISTING);
-
 		List<String> drtServiceAreaTripIds = new ArrayList<>();
-		Geometry geometry = drtServiceArea.getGeometry();
 
 //		filter for trips which start or end in service area
 		for (int i = 0; i < trips.rowCount(); i++) {
@@ -211,8 +302,16 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 			}
 		}
 
-		Table intermediateTrips = trips.where(trips.textColumn(PERSON).isIn(fullPersons.textColumn(PERSON)));
-		Table drtServiceAreaTrips = intermediateTrips.where(intermediateTrips.stringColumn(TRIP_ID).isIn(drtServiceAreaTripIds));
+		Table drtServiceAreaTrips = trips.where(trips.stringColumn(TRIP_ID).isIn(drtServiceAreaTripIds));
+
+//		write all trips in drt service area to csv. The trips table above only contains the projected columns, hence the rows are read
+//		again with all columns of the output trips, so that the file keeps its schema
+		OutputTableReader.of(tripsPath)
+			.allColumns()
+			.filter(OutputTableReader.RowPredicate.excludeFreight(PERSON))
+			.filter(OutputTableReader.RowPredicate.isIn(TRIP_ID, new HashSet<>(drtServiceAreaTripIds)))
+			.read()
+			.write().csv(getOutputPath("trips_in_drt_service_area.csv.gz").toFile());
 
 //		calc and write mode shares
 		calcAndWriteModalShares(drtServiceAreaTrips);
@@ -222,13 +321,10 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 
 
 //		filter for trips with drt only
-		trips = filterTripsWithDrt(trips, drtLegs, ptLineAnalysis);
+		trips = filterTripsWithDrt(trips, drtLegs);
 
 //		filter trips of base case for comparison
-		StringColumn tripIdColumn = trips.stringColumn(TRIP_ID);
-		StringColumn baseTripIdColumn = baseTrips.stringColumn(TRIP_ID);
-
-		baseTrips = baseTrips.where(baseTripIdColumn.isIn(tripIdColumn));
+		baseTrips = baseTrips.where(baseTrips.stringColumn(TRIP_ID).isIn(trips.stringColumn(TRIP_ID)));
 
 //		the number of trips in both filtered tables should be the same
 		if (baseTrips.rowCount() != trips.rowCount()) {
@@ -249,213 +345,129 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 		return 0;
 	}
 
-	private Table filterTripsWithDrt(Table trips, Table drtLegs, PtLineAnalysis ptLineAnalysis) {
-		TextColumn personTripsColumn = trips.textColumn(PERSON);
-		trips = trips.where(personTripsColumn.isIn(drtLegs.textColumn(PERSON_ID)));
+	private Path getOutputPath(String file) {
+		return outputDirectory != null ? outputDirectory.resolve(file) : output.getPath(file);
+	}
+
+	private Table filterTripsWithDrt(Table trips, Table drtLegs) {
+
+//		index drt departures by (exact) person id once instead of scanning all drt legs for every trip
+		Map<String, double[]> drtDepartures = indexDrtDeparturesByPerson(drtLegs);
 
 		IntList idx = new IntArrayList();
+		TextColumn persons = trips.textColumn(PERSON);
+		DoubleColumn depTimes = trips.doubleColumn(PtLineAnalysis.DEP_TIME_SECONDS);
+		DoubleColumn travTimes = trips.doubleColumn(PtLineAnalysis.TRAV_TIME_SECONDS);
 
 		for (int i = 0; i < trips.rowCount(); i++) {
-			Row row = trips.row(i);
+			double[] departures = drtDepartures.get(persons.get(i));
+			if (departures == null) {
+				continue;
+			}
 
-			Double tripStart = ptLineAnalysis.parseTimeManually(row.getString("dep_time"));
+			double tripStart = depTimes.getDouble(i);
 //			waiting time already included in travel time
-			Double travelTime = ptLineAnalysis.parseTimeManually(row.getString(TRAV_TIME));
+			double travelTime = travTimes.getDouble(i);
 
-			Table filtered = drtLegs.where(drtLegs.textColumn(PERSON_ID).containsString(row.getString(PERSON)));
-
-			for (int j = 0; j < filtered.rowCount(); j++) {
-				Row filteredRow = filtered.row(j);
-				if (Range.of(tripStart, tripStart + travelTime).contains(filteredRow.getDouble(DEPARTURE_TIME))) {
-					idx.add(i);
-					break;
-				}
+			if (containsValueInRange(departures, tripStart, tripStart + travelTime)) {
+				idx.add(i);
 			}
 		}
 		return trips.where(Selection.with(idx.toIntArray()));
 	}
 
-	private void aggregateAndWriteDrtODRelations(Table drtLegs, ShpOptions drtServiceArea) {
-		drtLegs = addOriginAndDestinationZoneIds(drtLegs, drtServiceArea);
-
-//		extract hours from departure time
+	/**
+	 * Maps every person id to the sorted departure times of its drt legs.
+	 */
+	private static Map<String, double[]> indexDrtDeparturesByPerson(Table drtLegs) {
+		TextColumn personIds = drtLegs.textColumn(PERSON_ID);
 		DoubleColumn departureTimes = drtLegs.doubleColumn(DEPARTURE_TIME);
-		int[] hours = new int[departureTimes.size()];
-
-		for (int i = 0; i < departureTimes.size(); i++) {
-			int hour = (int) Math.ceil(departureTimes.get(i) / 3600);
-//			handle hour values >=24h
-			if (hour >= 24) {
-				hour = 23;
-			}
-			hours[i] = hour;
-		}
-
-		IntColumn hourCol = IntColumn.create(DEPARTURE_H, hours);
-		drtLegs.addColumns(hourCol);
-
-		Table grouped = drtLegs
-			.summarize(DEPARTURE_H, count)
-			.by(drtLegs.stringColumn(ORIG_ZONE_ID), drtLegs.stringColumn(DEST_ZONE_ID), hourCol);
-
-// Get all unique origins and destinations
-		StringColumn origins = drtLegs.stringColumn(ORIG_ZONE_ID).unique();
-		StringColumn destinations = drtLegs.stringColumn(DEST_ZONE_ID).unique();
 
-// Create full range of hours 0–23
-		IntColumn departureHour = IntColumn.create(DEPARTURE_H);
-		for (int h = 0; h < 24; h++) {
-			departureHour.append(h);
-		}
-
-// Create a table of all combinations
-		List<String> originList = origins.asList();
-		List<String> destList = destinations.asList();
-
-		StringColumn fullOrigin = StringColumn.create(ORIG_ZONE_ID);
-		StringColumn fullDest = StringColumn.create(DEST_ZONE_ID);
-		IntColumn fullHour = IntColumn.create(DEPARTURE_H);
-
-		for (String o : originList) {
-			for (String d : destList) {
-				for (int h = 0; h < 24; h++) {
-					fullOrigin.append(o);
-					fullDest.append(d);
-					fullHour.append(h);
-				}
-			}
+		Map<String, DoubleArrayList> departures = new HashMap<>();
+		for (int i = 0; i < drtLegs.rowCount(); i++) {
+			departures.computeIfAbsent(personIds.get(i), k -> new DoubleArrayList()).add(departureTimes.getDouble(i));
 		}
 
-		Table fullCombinations = Table.create("fullCombinations", fullOrigin, fullDest, fullHour);
-
-// Left join summarized table with all combinations
-		Table completeSummary = fullCombinations.joinOn(ORIG_ZONE_ID, DEST_ZONE_ID, DEPARTURE_H)
-			.leftOuter(grouped);
-
-// Replace missing counts with 0
-		DoubleColumn countCol = completeSummary.doubleColumn("Count [departureHour]");
-
-		for (int i = 0; i < completeSummary.rowCount(); i++) {
-//			.get(i) returns null if value NaN
-			if (countCol.get(i) == null) {
-//				set 0 if NaN/null
-				countCol.set(i, 0);
-			}
+		Map<String, double[]> index = new HashMap<>(departures.size());
+		for (Map.Entry<String, DoubleArrayList> e : departures.entrySet()) {
+			double[] times = e.getValue().toDoubleArray();
+			Arrays.sort(times);
+			index.put(e.getKey(), times);
 		}
+		return index;
+	}
 
-		//Get distinct hour values to use as new column names
-		IntColumn hourColumn = completeSummary.intColumn(DEPARTURE_H);
-		List<Integer> uniqueHours = hourColumn.unique().asList();
-
-//Create a new empty table for the pivot result
-		StringColumn newOrigin = StringColumn.create(ORIG_ZONE_ID);
-		StringColumn newDest = StringColumn.create(DEST_ZONE_ID);
-		StringColumn origDest = StringColumn.create("origDest");
-
-//Create columns for each hour
-		Map<Integer, IntColumn> hourColumns = new HashMap<>();
-		for (Integer hour : uniqueHours) {
-			hourColumns.put(hour, IntColumn.create(hour.toString()));
+	/**
+	 * Checks whether the sorted array contains a value in the closed interval [from, to].
+	 */
+	private static boolean containsValueInRange(double[] sorted, double from, double to) {
+		int pos = Arrays.binarySearch(sorted, from);
+		if (pos >= 0) {
+			return true;
 		}
+//		insertion point = index of first value greater than from
+		int insertionPoint = -(pos + 1);
+		return insertionPoint < sorted.length && sorted[insertionPoint] <= to;
+	}
 
-//Aggregate values into new rows
-		Table aggregatedDrtServiceAreas = Table.create("aggregatedDrtServiceAreas");
-		aggregatedDrtServiceAreas.addColumns(origDest, newOrigin, newDest);
-		for (IntColumn col : hourColumns.values()) {
-			aggregatedDrtServiceAreas.addColumns(col);
-		}
+	private void aggregateAndWriteDrtODRelations(Table drtLegs, ShpOptions drtServiceArea) throws IOException {
+//		features are read only once and indexed, the zone assignment itself runs in parallel
+		ShpZoneIndex zoneIndex = new ShpZoneIndex(drtServiceArea.readFeatures(), "id");
 
-		Set<String> seenKeys = new HashSet<>();
-		for (Row row : completeSummary) {
-			String origin = row.getString(ORIG_ZONE_ID);
-			String dest = row.getString(DEST_ZONE_ID);
-			int hour = row.getInt(DEPARTURE_H);
-			int count = (int) row.getDouble("Count [departureHour]");
+//		if zones are nested, the smallest enclosing zone is used
+		int[] origins = zoneIndex.getZoneIndices(drtLegs.doubleColumn("fromX").asDoubleArray(), drtLegs.doubleColumn("fromY").asDoubleArray());
+		int[] destinations = zoneIndex.getZoneIndices(drtLegs.doubleColumn("toX").asDoubleArray(), drtLegs.doubleColumn("toY").asDoubleArray());
+		DoubleColumn departureTimes = drtLegs.doubleColumn(DEPARTURE_TIME);
 
-			String key = origin + "|" + dest;
+//		dense zone indices: all zones of the shp file + 1 additional slot for legs outside of any zone
+		int noZone = zoneIndex.getNumberOfZones();
+		int[][][] odPerHour = new int[noZone + 1][noZone + 1][24];
+		boolean[] isOrigin = new boolean[noZone + 1];
+		boolean[] isDestination = new boolean[noZone + 1];
 
-			int rowIndex;
-			if (!seenKeys.contains(key)) {
-				newOrigin.append(origin);
-				newDest.append(dest);
-				origDest.append(key);
+		for (int i = 0; i < drtLegs.rowCount(); i++) {
+			int origin = origins[i] == ShpZoneIndex.NO_ZONE ? noZone : origins[i];
+			int destination = destinations[i] == ShpZoneIndex.NO_ZONE ? noZone : destinations[i];
 
-				for (Integer h : uniqueHours) {
-					hourColumns.get(h).append(h.equals(hour) ? count : 0);
-				}
-				seenKeys.add(key);
-			} else {
-				// Find the index of this row in the pivot table
-				rowIndex = aggregatedDrtServiceAreas.stringColumn("origDest").indexOf(key);
-				IntColumn col = hourColumns.get(hour);
-				col.set(rowIndex, count);
+			int hour = (int) Math.ceil(departureTimes.getDouble(i) / 3600);
+//			handle hour values >=24h
+			if (hour >= 24) {
+				hour = 23;
 			}
+			odPerHour[origin][destination][hour]++;
+			isOrigin[origin] = true;
+			isDestination[destination] = true;
 		}
-		aggregatedDrtServiceAreas.removeColumns(origDest);
-		aggregatedDrtServiceAreas.write().csv(output.getPath("drt_legs_zones_od.csv").toFile());
-	}
 
-	private static Table addOriginAndDestinationZoneIds(Table drtLegs, ShpOptions drtServiceArea) {
-		StringColumn originZoneId = StringColumn.create(ORIG_ZONE_ID, new String[drtLegs.rowCount()]);
-		StringColumn destinationZoneId = StringColumn.create(DEST_ZONE_ID, new String[drtLegs.rowCount()]);
+//		write every combination of zones which appear as origin / destination. Relations without any leg can be skipped.
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(getOutputPath("drt_legs_zones_od.csv")), CSVFormat.DEFAULT)) {
+			List<String> header = new ArrayList<>(List.of(ORIG_ZONE_ID, DEST_ZONE_ID));
+			for (int h = 0; h < 24; h++) {
+				header.add(String.valueOf(h));
+			}
+			printer.printRecord(header);
 
-//		add from and to zone id to drt legs
-		for (int i = 0; i < drtLegs.rowCount(); i++) {
-			Row row = drtLegs.row(i);
-
-			Coord from = new Coord(row.getDouble("fromX"), row.getDouble("fromY"));
-			Coord to = new Coord(row.getDouble("toX"), row.getDouble("toY"));
-
-			double origSurface = 0.;
-			double destSurface = 0.;
-			for (SimpleFeature feature : drtServiceArea.readFeatures()) {
-				if (origSurface == 0.) {
-					if (MGC.coord2Point(from).within((Geometry) feature.getDefaultGeometry())) {
-						String id = feature.getAttribute("id").toString();
-						originZoneId.set(i, id);
-						origSurface = ((Geometry) feature.getDefaultGeometry()).getArea();
-					}
-				} else {
-//					approximation: if sqm of area is smaller than the matching area before:
-//					this is probably the more accurate zone as the bigger ones typically enclose the smaller ones completely
-					double area = ((Geometry) feature.getDefaultGeometry()).getArea();
-
-					if (MGC.coord2Point(from).within((Geometry) feature.getDefaultGeometry()) &&
-						area < origSurface) {
-//						overwrite originZoneId
-						String id = feature.getAttribute("id").toString();
-						originZoneId.set(i, id);
-						origSurface = ((Geometry) feature.getDefaultGeometry()).getArea();
-					}
+			for (int o = 0; o <= noZone; o++) {
+				if (!isOrigin[o]) {
+					continue;
 				}
-
-				if (destSurface == 0.) {
-					if (MGC.coord2Point(to).within((Geometry) feature.getDefaultGeometry())) {
-						String id = feature.getAttribute("id").toString();
-						destinationZoneId.set(i, id);
-						destSurface = ((Geometry) feature.getDefaultGeometry()).getArea();
+				for (int d = 0; d <= noZone; d++) {
+					if (!isDestination[d] || (skipEmptyOdRelations && Arrays.stream(odPerHour[o][d]).allMatch(c -> c == 0))) {
+						continue;
 					}
-				} else {
-//					approximation: if sqm of area is smaller than the matching area before:
-//					this is probably the more accurate zone as the bigger ones typically enclose the smaller ones completely
-					if (MGC.coord2Point(to).within((Geometry) feature.getDefaultGeometry()) &&
-						((Geometry) feature.getDefaultGeometry()).getArea() < destSurface) {
-//						overwrite destinationZoneId
-						String id = feature.getAttribute("id").toString();
-						destinationZoneId.set(i, id);
-						destSurface = ((Geometry) feature.getDefaultGeometry()).getArea();
+					List<Object> row = new ArrayList<>(26);
+					row.add(o == noZone ? "" : zoneIndex.getZoneId(o));
+					row.add(d == noZone ? "" : zoneIndex.getZoneId(d));
+					for (int legs : odPerHour[o][d]) {
+						row.add(legs);
 					}
+					printer.printRecord(row);
 				}
 			}
 		}
-		drtLegs.addColumns(originZoneId, destinationZoneId);
-		return drtLegs;
 	}
 
 	private void calcAndWriteModalShares(Table drtServiceAreaTrips) {
-//		write all trips in drt service area to csv
-		drtServiceAreaTrips.write().csv(output.getPath("trips_in_drt_service_area.csv.gz").toFile());
-
 		List<String> labels = new ArrayList<>();
 		for (int i = 0; i < distGroups.size() - 1; i++) {
 			labels.add(String.format("%d - %d", distGroups.get(i).intValue(), distGroups.get(i + 1).intValue()));
@@ -477,7 +489,7 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 		Comparator<Row> cmp = Comparator.comparingInt(row -> labels.indexOf(row.getString(DIST_GROUP)));
 		aggr = aggr.sortOn(cmp.thenComparing(row -> row.getString(MAIN_MODE)));
 
-		aggr.write().csv(output.getPath("mode_share.csv").toFile());
+		aggr.write().csv(getOutputPath("mode_share.csv").toFile());
 
 		// Norm each dist_group to 1
 		for (String label : labels) {
@@ -488,7 +500,7 @@ public class LausitzDrtAnalysis implements MATSimAppCommand {
 			if (total > 0)
 				distGroupShare.set(sel, distGroupShare.divide(total));
 		}
-		aggr.write().csv(output.getPath("mode_share_per_dist.csv").toFile());
+		aggr.write().csv(getOutputPath("mode_share_per_dist.csv").toFile());
 	}
 
 	private static String cut(double dist, List<Double> distGroups, List<String> labels) {
@@ -0,0 +1,326 @@
+package org.matsim.run.analysis;
+
+import org.locationtech.jts.geom.Envelope;
+import org.matsim.application.options.CsvOptions;
+import org.matsim.core.utils.io.IOUtils;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reader for MATSim output tables (e.g. output_persons.csv.gz, output_trips.csv.gz, drt legs).
+ * In contrast to {@code Table.read().csv(...)} only the projected columns are parsed, all other fields of a line are skipped.
+ * Rows can be filtered while reading with {@link RowPredicate}s, e.g. by a set of person ids, freight agents or a bounding box.
+ * Numerical columns are stored as primitive tablesaw columns ({@link DoubleColumn}, {@link IntColumn}).
+ * Quoted fields are supported, but fields must not contain line breaks, which is the case for all MATSim output tables.
+ */
+public final class OutputTableReader {
+
+	private final String path;
+	private final Map<String, ColumnType> columns = new LinkedHashMap<>();
+	private boolean allColumns;
+	private RowPredicate predicate = row -> true;
+
+	private OutputTableReader(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Create a reader for the given (possibly compressed) csv file.
+	 */
+	public static OutputTableReader of(String path) {
+		return new OutputTableReader(path);
+	}
+
+	/**
+	 * Add a column to the projection.
+	 */
+	public OutputTableReader column(String name, ColumnType type) {
+		columns.put(name, type);
+		return this;
+	}
+
+	/**
+	 * Add several columns to the projection.
+	 */
+	public OutputTableReader columns(Map<String, ColumnType> columns) {
+		this.columns.putAll(columns);
+		return this;
+	}
+
+	/**
+	 * Project all columns of the file in their original order, e.g. to write a subset of the rows with the schema of the input file.
+	 * Columns without explicit type, see {@link #column(String, ColumnType)}, are read as {@link ColumnType#STRING}, so that their values are kept unchanged.
+	 */
+	public OutputTableReader allColumns() {
+		this.allColumns = true;
+		return this;
+	}
+
+	/**
+	 * Only keep rows matching the predicate. Several filters are combined with a logical and.
+	 */
+	public OutputTableReader filter(RowPredicate predicate) {
+		this.predicate = this.predicate.and(predicate);
+		return this;
+	}
+
+	/**
+	 * Read the table. Only the projected columns are contained in the result.
+	 */
+	public Table read() throws IOException {
+		if (columns.isEmpty() && !allColumns) {
+			throw new IllegalArgumentException("At least one column has to be projected when reading " + path);
+		}
+
+		char delimiter = CsvOptions.detectDelimiter(path);
+
+		Table table = Table.create(Path.of(path).getFileName().toString());
+		try (BufferedReader reader = IOUtils.getBufferedReader(path)) {
+			String header = reader.readLine();
+			if (header == null) {
+				throw new IllegalArgumentException("File " + path + " is empty.");
+			}
+
+			LineRecord row = new LineRecord(delimiter);
+			row.setLine(header);
+			Map<String, Integer> index = new HashMap<>();
+			for (int i = 0; i < row.numberOfFields; i++) {
+				index.put(row.getField(i), i);
+			}
+			row.setHeader(index);
+
+			Map<String, ColumnType> projected = columns;
+			if (allColumns) {
+				projected = new LinkedHashMap<>();
+				for (int i = 0; i < row.numberOfFields; i++) {
+					projected.put(row.getField(i), columns.getOrDefault(row.getField(i), ColumnType.STRING));
+				}
+			}
+
+			int[] projection = new int[projected.size()];
+			Column<?>[] targets = new Column<?>[projected.size()];
+			int c = 0;
+			for (Map.Entry<String, ColumnType> e : projected.entrySet()) {
+				projection[c] = row.indexOf(e.getKey());
+				targets[c] = e.getValue().create(e.getKey());
+				c++;
+			}
+			table.addColumns(targets);
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				row.setLine(line);
+				if (predicate.test(row)) {
+					for (int i = 0; i < targets.length; i++) {
+						append(targets[i], row, projection[i]);
+					}
+				}
+			}
+		}
+		return table;
+	}
+
+	private static void append(Column<?> column, LineRecord row, int field) {
+		if (row.isEmpty(field)) {
+			column.appendMissing();
+		} else if (column instanceof DoubleColumn doubleColumn) {
+			doubleColumn.append(Double.parseDouble(row.getField(field)));
+		} else if (column instanceof IntColumn intColumn) {
+			intColumn.append(Integer.parseInt(row.getField(field)));
+		} else {
+			column.appendCell(row.getField(field));
+		}
+	}
+
+	/**
+	 * Freight and commercial agents are not part of the analyses.
+	 */
+	public static boolean isFreightAgent(String personId) {
+		return personId.contains("commercialPersonTraffic") || personId.contains("freight") || personId.contains("goodsTraffic");
+	}
+
+	/**
+	 * Access to the fields of the current line. Fields are only converted when they are accessed.
+	 */
+	public interface Row {
+
+		/**
+		 * Value of the given column in the current line.
+		 */
+		String get(String column);
+
+		/**
+		 * Value of the given column in the current line as double or NaN if the field is empty.
+		 */
+		double getDouble(String column);
+	}
+
+	/**
+	 * Predicate which is evaluated for every line before the projected columns are parsed.
+	 */
+	@FunctionalInterface
+	public interface RowPredicate {
+
+		/**
+		 * Whether the row should be kept.
+		 */
+		boolean test(Row row);
+
+		/**
+		 * Logical and of this and the other predicate.
+		 */
+		default RowPredicate and(RowPredicate other) {
+			return row -> test(row) && other.test(row);
+		}
+
+		/**
+		 * Logical or of this and the other predicate.
+		 */
+		default RowPredicate or(RowPredicate other) {
+			return row -> test(row) || other.test(row);
+		}
+
+		/**
+		 * Keep rows whose value in the given column is contained in the set.
+		 */
+		static RowPredicate isIn(String column, Set<String> values) {
+			return row -> values.contains(row.get(column));
+		}
+
+		/**
+		 * Remove rows of freight and commercial agents, identified by the person id in the given column.
+		 */
+		static RowPredicate excludeFreight(String personColumn) {
+			return row -> !isFreightAgent(row.get(personColumn));
+		}
+
+		/**
+		 * Keep rows whose coordinate lies within the bounding box.
+		 */
+		static RowPredicate withinBoundingBox(Envelope boundingBox, String xColumn, String yColumn) {
+			return row -> boundingBox.contains(row.getDouble(xColumn), row.getDouble(yColumn));
+		}
+	}
+
+	/**
+	 * Holds the current line and the start and end offsets of all its fields. The line is scanned once, substrings are only
+	 * created for accessed fields.
+	 */
+	private static final class LineRecord implements Row {
+		private final char delimiter;
+		private Map<String, Integer> header;
+		private String line;
+		private int[] starts = new int[64];
+		private int[] ends = new int[64];
+		private boolean[] escaped = new boolean[64];
+		private int numberOfFields;
+
+		private LineRecord(char delimiter) {
+			this.delimiter = delimiter;
+		}
+
+		private void setHeader(Map<String, Integer> header) {
+			this.header = header;
+		}
+
+		private int indexOf(String column) {
+			Integer i = header.get(column);
+			if (i == null) {
+				throw new IllegalArgumentException("Column " + column + " not found in header: " + header.keySet());
+			}
+			return i;
+		}
+
+		private void setLine(String line) {
+			this.line = line;
+			this.numberOfFields = 0;
+
+			int pos = 0;
+			int length = line.length();
+			while (true) {
+				ensureCapacity();
+				if (pos < length && line.charAt(pos) == '"') {
+//					quoted field, quotes inside are escaped by doubling them
+					int start = pos + 1;
+					int end = start;
+					boolean hasEscapes = false;
+					while (end < length) {
+						if (line.charAt(end) == '"') {
+							if (end + 1 < length && line.charAt(end + 1) == '"') {
+								hasEscapes = true;
+								end += 2;
+								continue;
+							}
+							break;
+						}
+						end++;
+					}
+					addField(start, end, hasEscapes);
+					pos = line.indexOf(delimiter, end);
+				} else {
+					int end = line.indexOf(delimiter, pos);
+					addField(pos, end < 0 ? length : end, false);
+					pos = end;
+				}
+
+				if (pos < 0) {
+					break;
+				}
+				pos++;
+			}
+		}
+
+		private void addField(int start, int end, boolean hasEscapes) {
+			starts[numberOfFields] = start;
+			ends[numberOfFields] = end;
+			escaped[numberOfFields] = hasEscapes;
+			numberOfFields++;
+		}
+
+		private void ensureCapacity() {
+			if (numberOfFields == starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+				ends = Arrays.copyOf(ends, ends.length * 2);
+				escaped = Arrays.copyOf(escaped, escaped.length * 2);
+			}
+		}
+
+		private boolean isEmpty(int field) {
+			return field >= numberOfFields || starts[field] == ends[field];
+		}
+
+		private String getField(int field) {
+			if (field >= numberOfFields) {
+				return "";
+			}
+			String value = line.substring(starts[field], ends[field]);
+			return escaped[field] ? value.replace("\"\"", "\"") : value;
+		}
+
+		@Override
+		public String get(String column) {
+			return getField(indexOf(column));
+		}
+
+		@Override
+		public double getDouble(String column) {
+			int field = indexOf(column);
+			return isEmpty(field) ? Double.NaN : Double.parseDouble(getField(field));
+		}
+	}
+}
@@ -8,21 +8,36 @@ import org.apache.commons.lang3.Range;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.IdSet;
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
 import org.matsim.api.core.v01.events.handler.PersonEntersVehicleEventHandler;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.application.CommandSpec;
 import org.matsim.application.MATSimAppCommand;
-import org.matsim.application.options.CsvOptions;
 import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TransitDriverStartsEvent;
+import org.matsim.core.api.experimental.events.handler.TransitDriverStartsEventHandler;
+import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
-import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.utils.EventsMultiplexer;
+import org.matsim.utils.ParallelTasks;
+import org.matsim.utils.SharedEventsAnalysis;
+import org.matsim.vehicles.Vehicle;
 import picocli.CommandLine;
 import tech.tablesaw.api.*;
 import tech.tablesaw.columns.Column;
-import tech.tablesaw.io.csv.CsvReadOptions;
 import tech.tablesaw.selection.Selection;
 
 import java.io.FileWriter;
@@ -31,13 +46,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static org.matsim.application.ApplicationUtils.globFile;
 import static tech.tablesaw.aggregate.AggregateFunctions.*;
 
-@CommandLine.Command(name = "pt-line", description = "Analyze and compare agents who use new pt connection from " +
+@CommandLine.Command(name = "pt-line", description = "Analyze and compare agents who use new pt connection(s) from " +
 	" policy case and the respective trips in the base case..")
 @CommandSpec(requireRunDirectory = true,
 	produces = {"pt_persons.csv", "pt_persons_home_locations.csv", "pt_persons_income_groups.csv", "pt_persons_age_groups.csv",
@@ -59,8 +74,28 @@ public class PtLineAnalysis implements MATSimAppCommand {
 	private List<Integer> ageGroups;
 	@CommandLine.Option(names = "--base-path", description = "Path to run directory of base case.", required = true)
 	private Path basePath;
+	@CommandLine.Option(names = "--streaming", description = "Only keep rows of pt line users while reading the persons and trips tables." +
+		" Reduces memory usage for large runs.", defaultValue = "false")
+	private boolean streaming;
+	@CommandLine.Option(names = "--max-parallelism", description = "Maximum number of input tables, which are read concurrently.", defaultValue = "4")
+	private int maxParallelism;
+	@CommandLine.Option(names = "--lines", split = ",", description = "Ids of the transit lines to analyze. Users of all given lines are analyzed together." +
+		" If several lines are given, the results of every single line are additionally written to a sub directory named after the line.", defaultValue = "RE-VSP1")
+	private List<String> lines;
+	@CommandLine.Option(names = "--policy-paths", split = ",", description = "Run directories of several policy cases, which are compared to the same base case." +
+		" The base case is read only once. Results are written to <policy>/analysis/pt-line, policies which have not changed since the last run are skipped.")
+	private List<Path> policyPaths = new ArrayList<>();
+	@CommandLine.Option(names = "--force", description = "Run the analysis even if inputs and options have not changed since the last run.", defaultValue = "false")
+	private boolean force;
+	@CommandLine.Spec
+	private CommandLine.Model.CommandSpec spec;
+
+//	output directory of a policy case in batch mode, otherwise the output options are used
+	private Path outputDirectory;
 
 	private final Map<String, List<Double>> ptPersons = new HashMap<>();
+//	line of every entry in ptPersons, in the same order as the entry times
+	private final Map<String, List<Id<TransitLine>>> ptPersonLines = new HashMap<>();
 
 	private static final String INCOME_GROUP = "incomeGroup";
 	private static final String PERSON = "person";
@@ -69,6 +104,9 @@ public class PtLineAnalysis implements MATSimAppCommand {
 	private static final String SCORE = "executed_score";
 	private static final String INCOME = "income";
 	private static final String TRAV_TIME = "trav_time";
+	private static final String DEP_TIME = "dep_time";
+	static final String DEP_TIME_SECONDS = "dep_time_seconds";
+	static final String TRAV_TIME_SECONDS = "trav_time_seconds";
 	private static final String TRAV_DIST = "traveled_distance";
 	private static final String EUCL_DIST = "euclidean_distance";
 	private static final String MAIN_MODE = "main_mode";
@@ -76,13 +114,25 @@ public class PtLineAnalysis implements MATSimAppCommand {
 	private static final String BASE_SUFFIX = "_base";
 	private static final String COUNT_PERSON = "Count [person]";
 
+//	columns of the persons and trips tables, which are needed for the analysis
+	static final Map<String, ColumnType> PERSON_COLUMNS = Map.of(PERSON, ColumnType.TEXT, SCORE, ColumnType.DOUBLE, INCOME, ColumnType.DOUBLE,
+		"age", ColumnType.INTEGER, "home_x", ColumnType.DOUBLE, "home_y", ColumnType.DOUBLE);
+	static final Map<String, ColumnType> TRIP_COLUMNS = Map.of(PERSON, ColumnType.TEXT, TRIP_ID, ColumnType.STRING,
+		DEP_TIME, ColumnType.STRING, TRAV_TIME, ColumnType.STRING, MAIN_MODE, ColumnType.STRING, TRAV_DIST, ColumnType.DOUBLE, EUCL_DIST, ColumnType.DOUBLE);
+
 	PtLineAnalysis(List<Integer> incomeGroups, List<Integer> ageGroups, OutputOptions output) {
 		this.incomeGroups = incomeGroups;
 		this.ageGroups = ageGroups;
 		this.output = output;
 	}
 
-	private PtLineAnalysis() {
+	PtLineAnalysis(List<Integer> incomeGroups, List<Integer> ageGroups, Path outputDirectory) {
+		this.incomeGroups = incomeGroups;
+		this.ageGroups = ageGroups;
+		this.outputDirectory = outputDirectory;
+	}
+
+	PtLineAnalysis() {
 	}
 
 	public static void main(String[] args) {
@@ -92,40 +142,123 @@ public class PtLineAnalysis implements MATSimAppCommand {
 
 	@Override
 	public Integer call() throws Exception {
-		String eventsFile = globFile(input.getRunDirectory(), "*output_events.xml.gz").toString();
+		if (policyPaths.isEmpty()) {
+//			the analysis is skipped if neither inputs nor options have changed since the last run
+			return AnalysisCache.create(spec, output, getInputs(input.getRunDirectory()))
+				.runIfChanged(force, () -> analyze(input.getRunDirectory(), null));
+		}
+
+//		the base case is read only once and shared by all policy cases, every policy case is skipped if it has not changed
+		BaseCaseTables base = BaseCaseTables.load(basePath, maxParallelism);
+		return BaseCaseTables.runPolicies(policyPaths, "pt-line", maxParallelism,
+			(policyPath, policyOutput) -> AnalysisCache.create(spec, policyOutput, getInputs(policyPath))
+				.runIfChanged(force, () -> forPolicy(policyOutput).analyze(policyPath, base)));
+	}
+
+	/**
+	 * Input files of the analysis of the given run.
+	 */
+	private List<Path> getInputs(Path runDirectory) {
+		return List.of(
+			globFile(runDirectory, "*output_events.xml.gz"),
+			globFile(runDirectory, "*output_transitSchedule.xml.gz"),
+			globFile(runDirectory, "*output_persons.csv.gz"),
+			globFile(runDirectory, "*output_trips.csv.gz"),
+			globFile(basePath, "*output_persons.csv.gz"),
+			globFile(basePath, "*output_trips.csv.gz"));
+	}
+
+	/**
+	 * Create a copy of this analysis with the same options, which writes to the given directory.
+	 * Every policy needs its own copy, because the analysis keeps state.
+	 */
+	private PtLineAnalysis forPolicy(Path policyOutput) {
+		PtLineAnalysis analysis = new PtLineAnalysis(new ArrayList<>(incomeGroups), new ArrayList<>(ageGroups), policyOutput);
+		analysis.basePath = basePath;
+		analysis.streaming = streaming;
+		analysis.maxParallelism = maxParallelism;
+		analysis.lines = lines;
+		return analysis;
+	}
+
+	/**
+	 * Analyze one policy run. If no shared base case tables are given, the needed rows of the base case are read.
+	 */
+	private int analyze(Path runDirectory, BaseCaseTables base) throws IOException, InterruptedException {
+		String eventsFile = globFile(runDirectory, "*output_events.xml.gz").toString();
 
 		EventsManager manager = EventsUtils.createEventsManager();
-		manager.addHandler(new NewPtLineEventHandler());
+		manager.addHandler(createHandler(runDirectory));
 		manager.initProcessing();
 
 		MatsimEventsReader reader = new MatsimEventsReader(manager);
 		reader.readFile(eventsFile);
 		manager.finishProcessing();
 
+		return analyzeTables(runDirectory, base);
+	}
+
+	/**
+	 * Create the analysis of the given run for a shared pass over its events with other analyses, see {@link EventsMultiplexer}.
+	 * Results are written to {@code <run directory>/analysis/pt-line}.
+	 *
+	 * @param base tables of the base case, see {@link BaseCaseTables#load}, which are read once for all policy runs
+	 */
+	SharedEventsAnalysis createSharedAnalysis(Path runDirectory, BaseCaseTables base) throws IOException {
+		Path analysisOutput = runDirectory.resolve("analysis").resolve("pt-line");
+		Files.createDirectories(analysisOutput);
+		PtLineAnalysis analysis = forPolicy(analysisOutput);
+
+		return new SharedEventsAnalysis() {
+			@Override
+			public List<EventHandler> createHandlers() {
+				return List.of(analysis.createHandler(runDirectory));
+			}
+
+			@Override
+			public int finish() throws IOException, InterruptedException {
+				return analysis.analyzeTables(runDirectory, base);
+			}
+		};
+	}
+
+	private EventHandler createHandler(Path runDirectory) {
+		String scheduleFile = globFile(runDirectory, "*output_transitSchedule.xml.gz").toString();
+		return new NewPtLineEventHandler(getLineVehicles(scheduleFile));
+	}
+
+	/**
+	 * Table stage of the analysis, after the events have been read.
+	 */
+	private int analyzeTables(Path runDirectory, BaseCaseTables base) throws IOException, InterruptedException {
 //		write persons, who use new pt line and their entry time to csv file
 		writePtPersons();
 
 //		all necessary file input paths are defined here
-		String personsPath = globFile(input.getRunDirectory(), "*output_persons.csv.gz").toString();
-		String tripsPath = globFile(input.getRunDirectory(), "*output_trips.csv.gz").toString();
+		String personsPath = globFile(runDirectory, "*output_persons.csv.gz").toString();
+		String tripsPath = globFile(runDirectory, "*output_trips.csv.gz").toString();
+
+//		all input tables are independent of each other and thus read concurrently
+		Map<String, Callable<Table>> inputs = new HashMap<>(Map.of(
+			BaseCaseTables.PERSONS, () -> readPersons(personsPath),
+			BaseCaseTables.TRIPS, () -> addTimeColumns(readPtPersonRows(tripsPath, TRIP_COLUMNS))));
+
 		String basePersonsPath = globFile(basePath, "*output_persons.csv.gz").toString();
 		String baseTripsPath = globFile(basePath, "*output_trips.csv.gz").toString();
+		if (base == null) {
+			inputs.put(BaseCaseTables.BASE_PERSONS, () -> readPtPersonRows(basePersonsPath, PERSON_COLUMNS));
+			inputs.put(BaseCaseTables.BASE_TRIPS, () -> addTimeColumns(readPtPersonRows(baseTripsPath, TRIP_COLUMNS)));
+		}
+		Map<String, Table> tables = ParallelTasks.computeAll(maxParallelism, inputs);
 
-		Table persons = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(personsPath))
-			.columnTypesPartial(Map.of(PERSON, ColumnType.TEXT, SCORE, ColumnType.DOUBLE, INCOME, ColumnType.DOUBLE))
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(personsPath)).build());
+		Table persons = tables.get(BaseCaseTables.PERSONS);
+		Table allBasePersons = base == null ? tables.get(BaseCaseTables.BASE_PERSONS) : base.persons();
+		Table allBaseTrips = base == null ? tables.get(BaseCaseTables.BASE_TRIPS) : base.trips();
 
 		Map<String, Range<Integer>> incomeLabels = getLabels(incomeGroups);
 		incomeLabels.put(incomeGroups.getLast() + "+", Range.of(incomeGroups.getLast(), 9999999));
 		incomeGroups.add(Integer.MAX_VALUE);
 
-//		filter for real agents only, no freight agents!
-		Table freightPersons = persons.where(persons.textColumn(PERSON).containsString("commercialPersonTraffic")
-			.or(persons.textColumn(PERSON).containsString("freight"))
-			.or(persons.textColumn(PERSON).containsString("goodsTraffic")));
-		persons = persons.where(persons.textColumn(PERSON).isNotIn(freightPersons.textColumn(PERSON)));
-
 		//		add income group column to persons table for further analysis
 		persons = addIncomeGroupColumnToTable(persons, incomeLabels);
 
@@ -133,24 +266,52 @@ public class PtLineAnalysis implements MATSimAppCommand {
 		writeIncomeDistr(persons, incomeLabels, "all_persons_income_groups.csv", null);
 		writeAgeDistr(persons, "all_persons_age_groups.csv", null);
 
+		Table trips = tables.get(BaseCaseTables.TRIPS);
 
+//		users of all lines together
+		int result = analyzeUsers(persons, allBasePersons, trips, allBaseTrips, incomeLabels);
+		if (result != 0 || lines.size() < 2) {
+			return result;
+		}
 
-		Map<String, ColumnType> columnTypes = new HashMap<>(Map.of(PERSON, ColumnType.TEXT,
-			TRAV_TIME, ColumnType.STRING, "dep_time", ColumnType.STRING, MAIN_MODE, ColumnType.STRING,
-			TRAV_DIST, ColumnType.DOUBLE, EUCL_DIST, ColumnType.DOUBLE, TRIP_ID, ColumnType.STRING));
+//		users of every single line, written to a sub directory named after the line
+		for (String line : lines) {
+			Path lineOutput = getOutputPath(line);
+			Files.createDirectories(lineOutput);
 
-//		filter for persons, which used the new pt line in pt policy case
-		TextColumn personColumn = persons.textColumn(PERSON);
-		persons = persons.where(personColumn.isIn(ptPersons.keySet()));
+			PtLineAnalysis lineAnalysis = forPolicy(lineOutput);
+			Id<TransitLine> lineId = Id.create(line, TransitLine.class);
+			for (Map.Entry<String, List<Double>> e : ptPersons.entrySet()) {
+				List<Id<TransitLine>> entryLines = ptPersonLines.get(e.getKey());
+				for (int i = 0; i < entryLines.size(); i++) {
+					if (entryLines.get(i).equals(lineId)) {
+						lineAnalysis.ptPersons.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue().get(i));
+						lineAnalysis.ptPersonLines.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(lineId);
+					}
+				}
+			}
+
+			lineAnalysis.writePtPersons();
+			result = lineAnalysis.analyzeUsers(persons, allBasePersons, trips, allBaseTrips, incomeLabels);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
 
-		//		read base persons and filter them
-		Table basePersons = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(basePersonsPath))
-			.columnTypesPartial(Map.of(PERSON, ColumnType.TEXT, SCORE, ColumnType.DOUBLE, INCOME, ColumnType.DOUBLE))
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(basePersonsPath)).build());
+	/**
+	 * Compare the users in {@link #ptPersons} and their trips with the new pt line to the base case.
+	 * The given tables contain all persons and at least the trips of these users, they are not modified.
+	 */
+	private int analyzeUsers(Table allPersons, Table allBasePersons, Table allTrips, Table allBaseTrips,
+		Map<String, Range<Integer>> incomeLabels) throws IOException {
+//		filter for persons, which used the new pt line in pt policy case
+		TextColumn personColumn = allPersons.textColumn(PERSON);
+		Table persons = allPersons.where(personColumn.isIn(ptPersons.keySet()));
 
-		TextColumn basePersonColumn = basePersons.textColumn(PERSON);
-		basePersons = basePersons.where(basePersonColumn.isIn(ptPersons.keySet()));
+		//		join base persons to the persons of the policy case
+		Table basePersons = StreamingTableJoin.align(allBasePersons, PERSON, persons.textColumn(PERSON).asList());
 
 		writeComparisonTable(persons, basePersons, SCORE, PERSON, "pt_persons_");
 
@@ -178,44 +339,36 @@ public class PtLineAnalysis implements MATSimAppCommand {
 //		write scores per income group
 		writeScorePerIncomeGroupDistr(scoresPerIncomeGroup, incomeLabels, "pt_persons_");
 
-		Table trips = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(tripsPath))
-			.columnTypesPartial(columnTypes)
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(tripsPath)).build());
-
-		Table baseTrips = Table.read().csv(CsvReadOptions.builder(IOUtils.getBufferedReader(baseTripsPath))
-			.columnTypesPartial(columnTypes)
-			.sample(false)
-			.separator(CsvOptions.detectDelimiter(baseTripsPath)).build());
-
 //		filter for trips with new pt line only
-		TextColumn personTripsColumn = trips.textColumn(PERSON);
-		trips = trips.where(personTripsColumn.isIn(ptPersons.keySet()));
-
 		IntList idx = new IntArrayList();
 
-		for (int i = 0; i < trips.rowCount(); i++) {
-			Row row = trips.row(i);
+		TextColumn tripPersons = allTrips.textColumn(PERSON);
+		DoubleColumn depTimes = allTrips.doubleColumn(DEP_TIME_SECONDS);
+		DoubleColumn travTimes = allTrips.doubleColumn(TRAV_TIME_SECONDS);
 
-			Double tripStart = parseTimeManually(row.getString("dep_time"));
-//			waiting time already included in travel time
-			Double travelTime = parseTimeManually(row.getString(TRAV_TIME));
+		for (int i = 0; i < allTrips.rowCount(); i++) {
+			List<Double> enterTimes = ptPersons.get(tripPersons.get(i));
+			if (enterTimes == null) {
+//				user of another line
+				continue;
+			}
 
-			List<Double> enterTimes = ptPersons.get(row.getString(PERSON));
+			double tripStart = depTimes.getDouble(i);
+//			waiting time already included in travel time
+			double travelTime = travTimes.getDouble(i);
 
 			for (Double enterTime : enterTimes) {
 				if (Range.of(tripStart, tripStart + travelTime).contains(enterTime)) {
+//					a trip can contain several legs with the new pt line, it is only added once
 					idx.add(i);
+					break;
 				}
 			}
 		}
-		trips = trips.where(Selection.with(idx.toIntArray()));
+		Table trips = allTrips.where(Selection.with(idx.toIntArray()));
 
 //		filter trips of base case for comparison
-		StringColumn tripIdColumn = trips.stringColumn(TRIP_ID);
-		StringColumn baseTripIdColumn = baseTrips.stringColumn(TRIP_ID);
-
-		baseTrips = baseTrips.where(baseTripIdColumn.isIn(tripIdColumn));
+		Table baseTrips = StreamingTableJoin.align(allBaseTrips, TRIP_ID, trips.stringColumn(TRIP_ID).asList());
 
 //		the number of trips in both filtered tables should be the same
 		if (baseTrips.rowCount() != trips.rowCount()) {
@@ -236,12 +389,63 @@ public class PtLineAnalysis implements MATSimAppCommand {
 		return 0;
 	}
 
+	/**
+	 * Read persons of the policy case. Freight agents are excluded.
+	 */
+	private Table readPersons(String personsPath) throws IOException {
+		return StreamingTableJoin.readFiltered(personsPath, PERSON_COLUMNS, OutputTableReader.RowPredicate.excludeFreight(PERSON));
+	}
+
+	/**
+	 * Read rows of pt line users from a persons or trips table. In streaming mode, all other rows are skipped while reading.
+	 */
+	private Table readPtPersonRows(String path, Map<String, ColumnType> columns) throws IOException {
+		if (streaming) {
+			return StreamingTableJoin.readFiltered(path, columns, OutputTableReader.RowPredicate.isIn(PERSON, ptPersons.keySet()));
+		}
+
+		Table table = OutputTableReader.of(path).columns(columns).read();
+		return table.where(table.textColumn(PERSON).isIn(ptPersons.keySet()));
+	}
+
+	/**
+	 * Resolve the analyzed transit lines to the vehicles of their departures.
+	 */
+	private IdMap<Vehicle, Id<TransitLine>> getLineVehicles(String scheduleFile) {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new TransitScheduleReader(scenario).readFile(scheduleFile);
+
+		IdMap<Vehicle, Id<TransitLine>> lineVehicles = new IdMap<>(Vehicle.class);
+		for (String line : lines) {
+			TransitLine transitLine = scenario.getTransitSchedule().getTransitLines().get(Id.create(line, TransitLine.class));
+			if (transitLine == null) {
+				log.fatal("Transit line {} not found in transit schedule {}.", line, scheduleFile);
+				throw new IllegalArgumentException();
+			}
+
+			for (TransitRoute route : transitLine.getRoutes().values()) {
+				for (Departure departure : route.getDepartures().values()) {
+					lineVehicles.put(departure.getVehicleId(), transitLine.getId());
+				}
+			}
+		}
+		log.info("Found {} vehicles for transit lines {}.", lineVehicles.size(), lines);
+		return lineVehicles;
+	}
+
+	/**
+	 * Path of an output file, either in the directory of the output options or in the output directory of the policy case.
+	 */
+	Path getOutputPath(String file) {
+		return outputDirectory != null ? outputDirectory.resolve(file) : output.getPath(file);
+	}
+
 	void calcAndWriteMeanStats(Table trips, Table persons, Table baseTrips, Table basePersons, String policy) throws IOException {
-		double meanTravelTimePolicy = calcMean(trips.column(TRAV_TIME));
+		double meanTravelTimePolicy = calcMean(trips.column(TRAV_TIME_SECONDS));
 		double meanTravelDistancePolicy = calcMean(trips.column(TRAV_DIST));
 		double meanEuclideanDistancePolicy = calcMean(trips.column(EUCL_DIST));
 		double meanScorePolicy = calcMean(persons.column(SCORE));
-		double meanTravelTimeBase = calcMean(baseTrips.column(TRAV_TIME));
+		double meanTravelTimeBase = calcMean(baseTrips.column(TRAV_TIME_SECONDS));
 		double meanTravelDistanceBase = calcMean(baseTrips.column(TRAV_DIST));
 		double meanEuclideanDistanceBase = calcMean(baseTrips.column(EUCL_DIST));
 		double meanScoreBase = calcMean(basePersons.column(SCORE + BASE_SUFFIX));
@@ -258,7 +462,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 //		write mean stats to csv
 		DecimalFormat f = new DecimalFormat("0.00", new DecimalFormatSymbols(Locale.ENGLISH));
 
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath("mean_travel_stats.csv").toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath("mean_travel_stats.csv").toString()), getCsvFormat())) {
 			printer.printRecord("\"" + policy + " users (10pct)\"", f.format(persons.rowCount()));
 			printer.printRecord("\"" + policy + " trips (10pct)\"", f.format(trips.rowCount()));
 			printer.printRecord("\"mean travel time policy case [s]\"", f.format(meanTravelTimePolicy));
@@ -286,7 +490,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 				.setName(SHARE)
 		);
 
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath(prefix + "base_modal_share.csv").toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath(prefix + "base_modal_share.csv").toString()), getCsvFormat())) {
 			printer.printRecord(MAIN_MODE, SHARE);
 			for (int i = 0; i < counts.rowCount(); i++) {
 				Row row = counts.row(i);
@@ -298,11 +502,12 @@ public class PtLineAnalysis implements MATSimAppCommand {
 	}
 
 	private void writePtPersons() throws IOException {
-		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(output.getPath("pt_persons.csv")), getCsvFormat())) {
-			printer.printRecord(PERSON, "time");
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(getOutputPath("pt_persons.csv")), getCsvFormat())) {
+			printer.printRecord(PERSON, "time", "line");
 			for (Map.Entry<String, List<Double>> e : ptPersons.entrySet()) {
-				for (Double time : e.getValue()) {
-					printer.printRecord(e.getKey(), time);
+				List<Id<TransitLine>> entryLines = ptPersonLines.get(e.getKey());
+				for (int i = 0; i < e.getValue().size(); i++) {
+					printer.printRecord(e.getKey(), e.getValue().get(i), entryLines.get(i));
 				}
 			}
 		}
@@ -310,7 +515,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 
 	void writeScorePerIncomeGroupDistr(Table scoresPerIncomeGroup, Map<String, Range<Integer>> labels, String prefix) {
 
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath(prefix + "mean_score_per_income_group.csv").toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath(prefix + "mean_score_per_income_group.csv").toString()), getCsvFormat())) {
 			printer.printRecord(INCOME_GROUP, "mean_score_base", "mean_score_policy");
 
 			List<String> distr = new ArrayList<>();
@@ -342,7 +547,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 	}
 
 	void writeComparisonTable(Table policy, Table base, String paramName, String id, String prefix) {
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath(prefix + paramName + ".csv").toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath(prefix + paramName + ".csv").toString()), getCsvFormat())) {
 			printer.printRecord(id, paramName + "_policy", paramName + BASE_SUFFIX);
 			for (int i = 0; i < policy.rowCount(); i++) {
 				Row row = policy.row(i);
@@ -367,7 +572,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 
 	void writeHomeLocations(Table persons, String prefix) throws IOException {
 		//		y think about adding first act coords here or even act before / after pt trip
-		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(output.getPath(prefix + "home_locations.csv")), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(getOutputPath(prefix + "home_locations.csv")), getCsvFormat())) {
 			printer.printRecord(PERSON, "home_x", "home_y");
 
 			for (int i = 0; i < persons.rowCount(); i++) {
@@ -383,7 +588,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 		String file = (outputString != null) ? outputString : prefix + "income_groups.csv";
 
 //		print income distr
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath(file).toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath(file).toString()), getCsvFormat())) {
 			printer.printRecord(INCOME_GROUP, COUNT_PERSON, SHARE);
 			for (String s : incomeDistr) {
 				printer.printRecord(s);
@@ -429,7 +634,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 
 
 //		print age distr
-		try (CSVPrinter printer = new CSVPrinter(new FileWriter(output.getPath(file).toString()), getCsvFormat())) {
+		try (CSVPrinter printer = new CSVPrinter(new FileWriter(getOutputPath(file).toString()), getCsvFormat())) {
 			printer.printRecord(AGE_GROUP, COUNT_PERSON, SHARE);
 			for (String s : ageDistr) {
 				printer.printRecord(s);
@@ -449,7 +654,7 @@ public class PtLineAnalysis implements MATSimAppCommand {
 			double value = 0;
 			if (column instanceof StringColumn stringColumn) {
 //				travel time is saved in hh:mm:ss format, thus read as string
-				value = LocalTime.parse(stringColumn.get(i)).toSecondOfDay();
+				value = parseTimeManually(stringColumn.get(i));
 			} else if (column instanceof DoubleColumn doubleColumn) {
 //				distances / scores are saved as doubles
 				value = doubleColumn.get(i);
@@ -537,34 +742,89 @@ public class PtLineAnalysis implements MATSimAppCommand {
 		return Integer.parseInt(s.split(regex)[0]);
 	}
 
-	double parseTimeManually(String time) {
-		String[] parts = time.split(":");
-		if (parts.length != 3) {
-			throw new IllegalArgumentException("Invalid time format: " + time);
+	/**
+	 * Parse a time in hh:mm:ss format to seconds. Hours may be 24 or larger, e.g. 25:30:00 for trips after midnight.
+	 * The characters are scanned directly, no intermediate objects are created.
+	 */
+	static double parseTimeManually(CharSequence time) {
+		long hours = 0;
+		long minutes = 0;
+		long current = 0;
+		int separators = 0;
+		int digits = 0;
+
+		for (int i = 0; i < time.length(); i++) {
+			char c = time.charAt(i);
+			if (c >= '0' && c <= '9') {
+				current = current * 10 + (c - '0');
+				digits++;
+			} else if (c == ':' && digits > 0 && separators < 2) {
+				if (separators == 0) {
+					hours = current;
+				} else {
+					minutes = current;
+				}
+				separators++;
+				current = 0;
+				digits = 0;
+			} else {
+				throw new IllegalArgumentException("Invalid time format: " + time);
+			}
 		}
 
-		double hours = Double.parseDouble(parts[0]);
-		double minutes = Double.parseDouble(parts[1]);
-		double seconds = Double.parseDouble(parts[2]);
+		if (separators != 2 || digits == 0) {
+			throw new IllegalArgumentException("Invalid time format: " + time);
+		}
 
 		// Validate minutes and seconds
-		if (minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+		if (minutes > 59 || current > 59) {
 			throw new IllegalArgumentException("Invalid minutes or seconds in: " + time);
 		}
 
-		return hours * 3600 + minutes * 60 + seconds;
+		return hours * 3600. + minutes * 60 + current;
+	}
+
+	/**
+	 * Add dep_time and trav_time in seconds as double columns to a trips table. The string columns are kept for the output.
+	 */
+	static Table addTimeColumns(Table trips) {
+		StringColumn depTimes = trips.stringColumn(DEP_TIME);
+		StringColumn travTimes = trips.stringColumn(TRAV_TIME);
+
+		double[] depSeconds = new double[trips.rowCount()];
+		double[] travSeconds = new double[trips.rowCount()];
+		for (int i = 0; i < trips.rowCount(); i++) {
+			depSeconds[i] = parseTimeManually(depTimes.get(i));
+			travSeconds[i] = parseTimeManually(travTimes.get(i));
+		}
+
+		trips.addColumns(DoubleColumn.create(DEP_TIME_SECONDS, depSeconds), DoubleColumn.create(TRAV_TIME_SECONDS, travSeconds));
+		return trips;
 	}
 
 
-	private final class NewPtLineEventHandler implements PersonEntersVehicleEventHandler {
+	private final class NewPtLineEventHandler implements PersonEntersVehicleEventHandler, TransitDriverStartsEventHandler {
+		private final IdMap<Vehicle, Id<TransitLine>> lineVehicles;
+		private final IdSet<Vehicle> vehicles = new IdSet<>(Vehicle.class);
+		private final IdSet<Person> transitDrivers = new IdSet<>(Person.class);
+
+		private NewPtLineEventHandler(IdMap<Vehicle, Id<TransitLine>> lineVehicles) {
+			this.lineVehicles = lineVehicles;
+			this.vehicles.addAll(lineVehicles.keySet());
+		}
+
+		@Override
+		public void handleEvent(TransitDriverStartsEvent event) {
+//			the driver starts before entering the vehicle
+			transitDrivers.add(event.getDriverId());
+		}
 
 		@Override
 		public void handleEvent(PersonEntersVehicleEvent event) {
-			if (event.getVehicleId().toString().contains("RE-VSP1") && !event.getPersonId().toString().contains("pt_")) {
-				if (!ptPersons.containsKey(event.getPersonId().toString())) {
-					ptPersons.put(event.getPersonId().toString(), new ArrayList<>());
-				}
-				ptPersons.get(event.getPersonId().toString()).add(event.getTime());
+			if (vehicles.contains(event.getVehicleId()) && !transitDrivers.contains(event.getPersonId())) {
+				String person = event.getPersonId().toString();
+				ptPersons.computeIfAbsent(person, k -> new ArrayList<>()).add(event.getTime());
+				ptPersonLines.computeIfAbsent(person, k -> new ArrayList<>()).add(lineVehicles.get(event.getVehicleId()));
 			}
 		}
 	}
@@ -0,0 +1,55 @@
+package org.matsim.run.analysis;
+
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads MATSim output tables (e.g. output_persons.csv.gz, output_trips.csv.gz) record by record and only keeps the rows which are needed.
+ * Base case rows can be joined to the rows of the policy case by a key column (e.g. person or trip_id) with hash lookups.
+ * This avoids loading complete tables of large runs just to keep a few thousand rows.
+ */
+final class StreamingTableJoin {
+
+	private StreamingTableJoin() {
+	}
+
+	/**
+	 * Read all rows which are accepted by the given predicate. Only the given columns are kept.
+	 */
+	static Table readFiltered(String path, Map<String, ColumnType> columns, OutputTableReader.RowPredicate keep) throws IOException {
+		return OutputTableReader.of(path)
+			.columns(columns)
+			.filter(keep)
+			.read();
+	}
+
+	/**
+	 * Select the rows whose key is contained in the given list of keys. The rows of the returned table are in the same order as the keys.
+	 * Keys which cannot be found in the table are skipped. This is used to join the rows of the base case to the rows of the policy case.
+	 */
+	static Table align(Table table, String keyColumn, List<String> keys) {
+		Map<String, Integer> positions = new HashMap<>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			positions.put(keys.get(i), i);
+		}
+
+//		sort rows by the position of their key
+		Column<?> keyValues = table.column(keyColumn);
+		int[] rowOfPosition = new int[keys.size()];
+		Arrays.fill(rowOfPosition, -1);
+		for (int i = 0; i < table.rowCount(); i++) {
+			Integer position = positions.get(keyValues.getString(i));
+			if (position != null) {
+				rowOfPosition[position] = i;
+			}
+		}
+		return table.rows(Arrays.stream(rowOfPosition).filter(i -> i >= 0).toArray());
+	}
+}
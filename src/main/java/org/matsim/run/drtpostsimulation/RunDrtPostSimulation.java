@@ -1,6 +1,5 @@
 package org.matsim.run.drtpostsimulation;
 
-import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import com.google.common.base.Preconditions;
 import com.google.inject.Singleton;
 import org.apache.commons.csv.CSVFormat;
@@ -10,7 +9,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Point;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -29,19 +27,16 @@ import org.matsim.contrib.drt.optimizer.rebalancing.RebalancingParams;
 import org.matsim.contrib.drt.optimizer.rebalancing.mincostflow.MinCostFlowRebalancingStrategyParams;
 import org.matsim.contrib.drt.run.*;
 import org.matsim.contrib.dvrp.run.AbstractDvrpModeModule;
-import org.matsim.contrib.dvrp.run.DvrpConfigGroup;
-import org.matsim.contrib.emissions.utils.EmissionsConfigGroup;
-import org.matsim.contrib.vsp.pt.fare.PtFareConfigGroup;
 import org.matsim.core.config.Config;
-import org.matsim.core.config.ConfigGroup;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.ReplanningConfigGroup;
-import org.matsim.core.config.groups.RoutingConfigGroup;
 import org.matsim.core.config.groups.ScoringConfigGroup;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.filter.NetworkFilterManager;
 import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.drt.DrtLinkZoneTable;
+import org.matsim.drt.DrtOnlyRunConfig;
 import org.matsim.simwrapper.SimWrapperConfigGroup;
 import org.matsim.utils.CreateFleetVehicles;
 import org.matsim.utils.objectattributes.attributable.Attributes;
@@ -113,49 +108,10 @@ public class RunDrtPostSimulation implements MATSimAppCommand {
 				.orElseThrow(() -> new NoSuchElementException("The main output directory does not have an output config file."))
 				.toString();
 
-			ScoringConfigGroup scoring = new ScoringConfigGroup();
-			ScoringConfigGroup.ActivityParams dummyActParams = scoring.getActivityParams("dummy");
-			dummyActParams.setScoringThisActivityAtAll(false);
-			dummyActParams.setTypicalDuration(24 * 3600.);
-			dummyActParams.setTypicalDurationScoreComputation(ScoringConfigGroup.TypicalDurationScoreComputation.relative);
-
-			Config newConfig = new Config();
-			newConfig.addModule(scoring);
-
-//			apparently one cannot replace a configGroup in the config with a custom one and also cannot
-//			delete act params and mode params from scoringCfgGroup.
-//			thus, we need to create an empty config container, add the custom cfgGroups and then copy over the ones we need from the output cfg
 			Config oldConfig = ConfigUtils.loadConfig(configPath);
-
-			Set<String> excludedCfgGroups = Set.of(EmissionsConfigGroup.GROUP_NAME, ScoringConfigGroup.GROUP_NAME, PtFareConfigGroup.MODULE_NAME,
-				SwissRailRaptorConfigGroup.GROUP);
-//			add all cfg groups which we want to use from output cfg from main run
-			for (ConfigGroup group : oldConfig.getModules().values()) {
-				if (excludedCfgGroups.contains(group.getName())) {
-					continue;
-				}
-				newConfig.addModule(group);
-			}
-
-			DvrpConfigGroup dvrpCfg = ConfigUtils.addOrGetModule(newConfig, DvrpConfigGroup.class);
-			dvrpCfg.networkModes = Set.of(networkMode);
+			Config newConfig = DrtOnlyRunConfig.create(oldConfig);
 			ConfigUtils.addOrGetModule(newConfig, SimWrapperConfigGroup.class);
-
-			MultiModeDrtConfigGroup multiModeDrtConfigGroup = ConfigUtils.addOrGetModule(newConfig, MultiModeDrtConfigGroup.class);
-//			make sure there is only 1 drt mode (should always be the case in this scenario)
-			if (multiModeDrtConfigGroup.getModalElements().size() > 1) {
-				log.fatal("There should be no more than 1 drt mode in the MultiModeDrtConfigGroup! The loaded config group has {} drt modes!",
-					multiModeDrtConfigGroup.getModalElements().size());
-				throw new IllegalStateException();
-			}
-			DrtConfigGroup drtCfg = multiModeDrtConfigGroup.getModalElements().stream().findFirst().orElse(null);
-
-			assert drtCfg != null;
-			if (!drtCfg.getMode().equals(TransportMode.drt)) {
-				log.fatal("The name of the drt mode should be {}! The loaded config group configures a drt mode with name {} instead!",
-					TransportMode.drt, drtCfg.getMode());
-				throw new IllegalStateException();
-			}
+			DrtConfigGroup drtCfg = DrtOnlyRunConfig.getDrtConfigGroup(newConfig);
 
 			//		define CreateFleetVehicles object to generate drt veh fleet
 			CreateFleetVehicles fleetGenerator = new CreateFleetVehicles(Integer.parseInt(vehicleCapacity), drtCfg.getMode(), startTime,
@@ -173,12 +129,13 @@ public class RunDrtPostSimulation implements MATSimAppCommand {
 			adaptNewConfig(newConfig, outputDirectory, drtPlansPath, oldConfig, outputVehiclePaths[1]);
 
 			Controler controler = DrtControlerCreator.createControler(newConfig, false);
-			// Use shape-file-based constraints
+			// Use shape-file-based constraints, the zone of every link is computed once
+			DrtLinkZoneTable zoneTable = DrtLinkZoneTable.create(controler.getScenario().getNetwork(), features);
 			controler.addOverridingModule(new AbstractDvrpModeModule(drtCfg.mode) {
 				@Override
 				public void install() {
 					bindModal(ConstraintSetChooser.class).toProvider(
-						() -> new ShpBasedConstraintChooser(shp.getShapeFile(), drtCfg)).in(Singleton.class);
+						() -> new ShpBasedConstraintChooser(zoneTable, drtCfg)).in(Singleton.class);
 				}
 			});
 			controler.run();
@@ -250,23 +207,6 @@ public class RunDrtPostSimulation implements MATSimAppCommand {
 	}
 
 	private void adaptNewConfig(Config newConfig, String outputDirectory, Path drtPlansPath, Config oldConfig, String outputVehTypesPath) throws IOException {
-		newConfig.controller().setOutputDirectory(outputDirectory);
-		newConfig.controller().setLastIteration(1);
-		newConfig.counts().setInputFile(null);
-		newConfig.global().setCoordinateSystem("EPSG:25832");
-		newConfig.plans().setInputFile(drtPlansPath.toString());
-//			set flow/storage cap factors to 1 (as in 100pct) because we only look at drt vehicles anyways
-		newConfig.qsim().setFlowCapFactor(1.);
-		newConfig.qsim().setStorageCapFactor(1.);
-		newConfig.qsim().setMainModes(Set.of(networkMode));
-		newConfig.replanningAnnealer().setActivateAnnealingModule(false);
-		newConfig.routing().setAccessEgressType(RoutingConfigGroup.AccessEgressType.none);
-		newConfig.routing().setNetworkModes(Set.of(networkMode));
-		newConfig.transit().setUseTransit(false);
-		newConfig.transit().setTransitScheduleFile(null);
-		newConfig.transit().setVehiclesFile(null);
-		newConfig.vehicles().setVehiclesFile(outputVehTypesPath);
-
 		//			get output network, filter it for drt only and set as input network if it does not exist yet
 		Path drtNetworkPath = Paths.get(mainSimOutputPath.toString(), POST_SIM_DIR).resolve("drt-network.xml.gz");
 		if (!Files.exists(drtNetworkPath)) {
@@ -283,7 +223,9 @@ public class RunDrtPostSimulation implements MATSimAppCommand {
 
 			NetworkUtils.writeNetwork(drtNetwork, drtNetworkPath.toString());
 		}
-		newConfig.network().setInputFile(drtNetworkPath.toString());
+		DrtOnlyRunConfig.adapt(newConfig, outputDirectory, drtPlansPath.toString(), drtNetworkPath.toString(), outputVehTypesPath, networkMode);
+		newConfig.controller().setLastIteration(1);
+		newConfig.global().setCoordinateSystem("EPSG:25832");
 
 		ReplanningConfigGroup replanning = newConfig.replanning();
 //			clear all replanning strategies except ChangeExpBeta
@@ -374,35 +316,31 @@ public class RunDrtPostSimulation implements MATSimAppCommand {
 
 	/**
 	 * Shape-file-based constraint chooser will set up different constraints sets for DRT requests based on its start location and the
-	 * specified typical waiting time in the shape file.
+	 * specified typical waiting time in the shape file. The constraints set of every link is chosen once at construction.
 	 */
 	class ShpBasedConstraintChooser implements ConstraintSetChooser {
-		private final List<SimpleFeature> features;
-		private final Map<Double, DrtOptimizationConstraintsSet> constraintsMap;
+		private final DrtOptimizationConstraintsSet[] constraintsPerLink;
+		private final DrtOptimizationConstraintsSet defaultConstraints;
 
-		ShpBasedConstraintChooser(String drtOperationalArea, DrtConfigGroup drtConfigGroup) {
-			this.features = new ShpOptions(drtOperationalArea, null, null).readFeatures();
-			this.constraintsMap = new HashMap<>();
+		ShpBasedConstraintChooser(DrtLinkZoneTable zoneTable, DrtConfigGroup drtConfigGroup) {
+			Map<Double, DrtOptimizationConstraintsSet> constraintsMap = new HashMap<>();
 			for (DrtOptimizationConstraintsSet drtOptimizationConstraintsSet : drtConfigGroup.addOrGetDrtOptimizationConstraintsParams().getDrtOptimizationConstraintsSets()) {
 				constraintsMap.put(drtOptimizationConstraintsSet.maxWaitTime, drtOptimizationConstraintsSet);
 			}
+
+			// the factor 1.5 is an initial estimation, may need to be adjusted
+			this.defaultConstraints = constraintsMap.get(defaultTargetMeanWaitTime * 1.5);
+			this.constraintsPerLink = new DrtOptimizationConstraintsSet[zoneTable.size()];
+			for (int i = 0; i < constraintsPerLink.length; i++) {
+				double maxWaitTime = Math.min(zoneTable.getTypicalWaitTime(i, defaultTargetMeanWaitTime) * 1.5, defaultTargetMeanWaitTime * 1.5);
+				constraintsPerLink[i] = constraintsMap.get(maxWaitTime);
+			}
 		}
 
 		@Override
 		public Optional<DrtOptimizationConstraintsSet> chooseConstraintSet(double departureTime, Link accessActLink, Link egressActLink, Person person, Attributes tripAttributes) {
-			double maxWaitTime = defaultTargetMeanWaitTime * 1.5;
-			// the factor 1.5 is an initial estimation, may need to be adjusted
-
-			Point fromPoint = MGC.coord2Point(accessActLink.getToNode().getCoord());
-			for (SimpleFeature feature : features) {
-				if (fromPoint.within((Geometry) feature.getDefaultGeometry())) {
-					double typicalWaitTimeInZone = Double.parseDouble(feature.getAttribute(TYP_WT).toString());
-					if (typicalWaitTimeInZone * 1.5 < maxWaitTime) {
-						maxWaitTime = typicalWaitTimeInZone * 1.5;
-					}
-				}
-			}
-			return Optional.of(constraintsMap.get(maxWaitTime));
+			int index = accessActLink.getId().index();
+			return Optional.ofNullable(index < constraintsPerLink.length ? constraintsPerLink[index] : defaultConstraints);
 		}
 	}
 }
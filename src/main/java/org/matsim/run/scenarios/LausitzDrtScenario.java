@@ -1,14 +1,13 @@
 package org.matsim.run.scenarios;
 
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.application.MATSimApplication;
 import org.matsim.application.options.ShpOptions;
 import org.matsim.contrib.drt.estimator.DrtEstimatorModule;
 import org.matsim.contrib.drt.estimator.impl.DirectTripBasedDrtEstimator;
 import org.matsim.contrib.drt.estimator.impl.distribution.NormalDistributionGenerator;
-import org.matsim.contrib.drt.estimator.impl.trip_estimation.ConstantRideDurationEstimator;
-import org.matsim.contrib.drt.estimator.impl.waiting_time_estimation.ShapeFileBasedWaitingTimeEstimator;
 import org.matsim.contrib.drt.run.DrtConfigGroup;
 import org.matsim.contrib.drt.run.MultiModeDrtConfigGroup;
 import org.matsim.contrib.drt.run.MultiModeDrtModule;
@@ -23,6 +22,8 @@ import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.dashboards.LausitzDrtDashboard;
+import org.matsim.drt.DrtEstimateStore;
+import org.matsim.drt.DrtFullSimulationListener;
 import org.matsim.drt.PtAndDrtFareModule;
 import org.matsim.drt.ShpBasedDrtRequestValidator;
 import org.matsim.run.DrtAndIntermodalityOptions;
@@ -31,6 +32,7 @@ import org.matsim.simwrapper.SimWrapperModule;
 import picocli.CommandLine;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Run the Lausitz scenario including a regional DRT service.
@@ -108,7 +110,23 @@ public final class LausitzDrtScenario extends LausitzScenario {
 		// there is a syntax that can achieve the same thing but it does not need the "components". kai, jun'25
 		controler.configureQSimComponents(DvrpQSimComponents.activateAllModes(ConfigUtils.addOrGetModule(controler.getConfig(), MultiModeDrtConfigGroup.class)));
 
+//		wait times per link and ride time parameters per zone pair are computed once and shared by the estimators and request validators of all drt modes
+		DrtEstimateStore estimateStore = DrtEstimateStore.create(network, shp.readFeatures(),
+			drtOpt.getTypicalWaitTime(), drtOpt.getRideTimeAlpha(), drtOpt.getRideTimeBeta());
+
 		MultiModeDrtConfigGroup multiModeDrtConfigGroup = MultiModeDrtConfigGroup.get(config);
+
+//		hybrid drt simulation: drt is teleported in all iterations, the estimates are refitted from a drt only full simulation every n iterations.
+//		the estimate store is shared by all drt modes, but only the legs of mode drt are simulated, hence other drt modes are not supported
+		if (drtOpt.getFullSimInterval() > 0) {
+			List<String> drtModes = multiModeDrtConfigGroup.getModalElements().stream().map(DrtConfigGroup::getMode).toList();
+			if (!drtModes.equals(List.of(TransportMode.drt))) {
+				throw new IllegalArgumentException("The hybrid drt simulation needs exactly one drt mode with name " + TransportMode.drt
+					+ ", but the config has the drt modes " + drtModes + "!");
+			}
+			controler.addControlerListener(new DrtFullSimulationListener(estimateStore, shp.getShapeFile(), drtOpt.getFullSimInterval(), drtOpt.getFullSimFleetSize()));
+		}
+
 		for (DrtConfigGroup drtConfigGroup : multiModeDrtConfigGroup.getModalElements()) {
 			controler.addOverridingModule(new AbstractModule() {
 				@Override
@@ -116,9 +134,9 @@ public final class LausitzDrtScenario extends LausitzScenario {
 					DrtEstimatorModule.bindEstimator(binder(), drtConfigGroup.mode).toInstance(
 						new DirectTripBasedDrtEstimator.Builder()
 //							TODO: for what exactly is the typicalWaitingTIme needed? Don't we set this from the shp file
-							.setWaitingTimeEstimator(new ShapeFileBasedWaitingTimeEstimator(network, shp.readFeatures(), drtOpt.getTypicalWaitTime()))
+							.setWaitingTimeEstimator(estimateStore.getWaitingTimeEstimator())
 							.setWaitingTimeDistributionGenerator(new NormalDistributionGenerator(1, drtOpt.getWaitTimeStd()))
-							.setRideDurationEstimator(new ConstantRideDurationEstimator(drtOpt.getRideTimeAlpha(), drtOpt.getRideTimeBeta()))
+							.setRideDurationEstimator(estimateStore.getRideDurationEstimator())
 							.setRideDurationDistributionGenerator(new NormalDistributionGenerator(2, drtOpt.getRideTimeStd()))
 							.build()
 					);
@@ -130,7 +148,7 @@ public final class LausitzDrtScenario extends LausitzScenario {
 				@Override
 				protected void configureQSim() {
 					bindModal(PassengerRequestValidator.class).toProvider(
-						modalProvider(getter -> new ShpBasedDrtRequestValidator(shp))).asEagerSingleton();
+						modalProvider(getter -> new ShpBasedDrtRequestValidator(estimateStore.getZoneTable()))).asEagerSingleton();
 				}
 			});
 		}
@@ -0,0 +1,261 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.TransitDriverStartsEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.matsim.utils.BinaryEventsWriter.*;
+
+/**
+ * Replays events from a file written by {@link BinaryEventsWriter} to an {@link EventsManager}, in the original order of the events.
+ * The file is read row group by row group, so only one row group and the string dictionary are kept in memory.
+ * The event types, which {@link MatsimEventsReader} creates as typed events, are recreated as typed events too, so that the usual
+ * event handlers see the same events as when reading the xml file. All other types, e.g. the drt request events, are passed on as
+ * {@link GenericEvent} with all their attributes, unless a custom event mapper is registered for them, like for the {@link MatsimEventsReader}.
+ */
+public final class BinaryEventsReader {
+
+	private final EventsManager manager;
+	private final Map<String, MatsimEventsReader.CustomEventMapper> customEventMappers = new HashMap<>();
+
+	private final List<String> strings = new ArrayList<>();
+
+	public BinaryEventsReader(EventsManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Convert generic events of the given type, e.g. drt request events, see {@link MatsimEventsReader#addCustomEventMapper}.
+	 */
+	public void addCustomEventMapper(String eventType, MatsimEventsReader.CustomEventMapper mapper) {
+		customEventMappers.put(eventType, mapper);
+	}
+
+	/**
+	 * Read all events of the file and pass them to the events manager. The manager is neither initialized nor finished by this method.
+	 */
+	public void readFile(Path file) throws IOException {
+		InputStream in = Files.newInputStream(file);
+		if (file.getFileName().toString().endsWith(".gz")) {
+			in = new GZIPInputStream(in, 1 << 16);
+		}
+
+		strings.clear();
+		List<String> types = new ArrayList<>();
+		try (DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+			if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+				throw new IllegalArgumentException("File " + file + " is not a binary events file of version " + VERSION + "!");
+			}
+
+//			a row group without events marks the end of the file
+			int rows;
+			while ((rows = data.readInt()) > 0) {
+				int newStrings = data.readInt();
+				for (int i = 0; i < newStrings; i++) {
+					strings.add(readString(data));
+				}
+				int newTypes = data.readInt();
+				for (int i = 0; i < newTypes; i++) {
+					types.add(readString(data));
+				}
+
+				int[] order = readInts(data, rows);
+
+				TypeColumns[] columns = new TypeColumns[types.size()];
+				int presentTypes = data.readInt();
+				for (int i = 0; i < presentTypes; i++) {
+					int type = data.readInt();
+					columns[type] = TypeColumns.read(data, types.get(type));
+				}
+
+				int[] cursor = new int[columns.length];
+				for (int type : order) {
+					manager.processEvent(createEvent(columns[type], cursor[type]++));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a string written by {@link BinaryEventsWriter#writeString}.
+	 */
+	static String readString(DataInputStream data) throws IOException {
+		return new String(data.readNBytes(data.readInt()), StandardCharsets.UTF_8);
+	}
+
+	private static int[] readInts(DataInputStream data, int size) throws IOException {
+		int[] values = new int[size];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = data.readInt();
+		}
+		return values;
+	}
+
+	private static double[] readDoubles(DataInputStream data, int size) throws IOException {
+		double[] values = new double[size];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = data.readDouble();
+		}
+		return values;
+	}
+
+	private Event createEvent(TypeColumns columns, int row) {
+		double time = columns.time[row];
+		Id<Person> person = id(columns.person[row], Person.class);
+		Id<Link> link = id(columns.link[row], Link.class);
+		Id<Vehicle> vehicle = id(columns.vehicle[row], Vehicle.class);
+
+		return switch (columns.type) {
+			case ActivityEndEvent.EVENT_TYPE -> new ActivityEndEvent(time, person, link,
+				id(columns, row, "facility", ActivityFacility.class), string(columns, row, "actType"), coord(columns, row));
+			case ActivityStartEvent.EVENT_TYPE -> new ActivityStartEvent(time, person, link,
+				id(columns, row, "facility", ActivityFacility.class), string(columns, row, "actType"), coord(columns, row));
+			case PersonDepartureEvent.EVENT_TYPE -> new PersonDepartureEvent(time, person, link,
+				string(columns, row, "legMode"), string(columns, row, "computationalRoutingMode"));
+			case PersonArrivalEvent.EVENT_TYPE -> new PersonArrivalEvent(time, person, link, string(columns, row, "legMode"));
+			case PersonStuckEvent.EVENT_TYPE -> new PersonStuckEvent(time, person, link, string(columns, row, "legMode"));
+			case PersonEntersVehicleEvent.EVENT_TYPE -> new PersonEntersVehicleEvent(time, person, vehicle);
+			case PersonLeavesVehicleEvent.EVENT_TYPE -> new PersonLeavesVehicleEvent(time, person, vehicle);
+			case LinkEnterEvent.EVENT_TYPE -> new LinkEnterEvent(time, vehicle, link);
+			case LinkLeaveEvent.EVENT_TYPE -> new LinkLeaveEvent(time, vehicle, link);
+			case VehicleEntersTrafficEvent.EVENT_TYPE -> new VehicleEntersTrafficEvent(time, person, link, vehicle,
+				string(columns, row, "networkMode"), number(columns, row, "relativePosition", 1.0));
+			case VehicleLeavesTrafficEvent.EVENT_TYPE -> new VehicleLeavesTrafficEvent(time, person, link, vehicle,
+				string(columns, row, "networkMode"), number(columns, row, "relativePosition", 1.0));
+			case VehicleArrivesAtFacilityEvent.EVENT_TYPE -> new VehicleArrivesAtFacilityEvent(time, vehicle,
+				id(columns, row, "facility", TransitStopFacility.class), number(columns, row, "delay", 0.));
+			case VehicleDepartsAtFacilityEvent.EVENT_TYPE -> new VehicleDepartsAtFacilityEvent(time, vehicle,
+				id(columns, row, "facility", TransitStopFacility.class), number(columns, row, "delay", 0.));
+			case TeleportationArrivalEvent.EVENT_TYPE -> new TeleportationArrivalEvent(time, person,
+				number(columns, row, "distance", 0.), string(columns, row, "mode"));
+			case PersonMoneyEvent.EVENT_TYPE -> new PersonMoneyEvent(time, person, number(columns, row, "amount", 0.),
+				string(columns, row, "purpose"), string(columns, row, "transactionPartner"), string(columns, row, "reference"));
+			case PersonScoreEvent.EVENT_TYPE -> new PersonScoreEvent(time, person, number(columns, row, "amount", 0.),
+				string(columns, row, "kind"));
+			case TransitDriverStartsEvent.EVENT_TYPE -> new TransitDriverStartsEvent(time,
+				id(columns, row, "driverId", Person.class), id(columns, row, "vehicleId", Vehicle.class),
+				id(columns, row, "transitLineId", TransitLine.class),
+				id(columns, row, "transitRouteId", TransitRoute.class),
+				id(columns, row, "departureId", Departure.class));
+			case AgentWaitingForPtEvent.EVENT_TYPE -> new AgentWaitingForPtEvent(time, id(columns, row, "agent", Person.class),
+				id(columns, row, "atStop", TransitStopFacility.class),
+				id(columns, row, "destinationStop", TransitStopFacility.class));
+			default -> createGenericEvent(columns, row, time);
+		};
+	}
+
+	private Event createGenericEvent(TypeColumns columns, int row, double time) {
+		GenericEvent event = new GenericEvent(columns.type, time);
+		Map<String, String> attributes = event.getAttributes();
+		putIfPresent(attributes, PERSON, columns.person[row]);
+		putIfPresent(attributes, LINK, columns.link[row]);
+		putIfPresent(attributes, VEHICLE, columns.vehicle[row]);
+		for (Map.Entry<String, int[]> attribute : columns.strings.entrySet()) {
+			putIfPresent(attributes, attribute.getKey(), attribute.getValue()[row]);
+		}
+		for (Map.Entry<String, double[]> attribute : columns.doubles.entrySet()) {
+			if (!Double.isNaN(attribute.getValue()[row])) {
+				attributes.put(attribute.getKey(), Double.toString(attribute.getValue()[row]));
+			}
+		}
+
+		MatsimEventsReader.CustomEventMapper mapper = customEventMappers.get(columns.type);
+		return mapper == null ? event : mapper.apply(event);
+	}
+
+	private void putIfPresent(Map<String, String> attributes, String key, int value) {
+		if (value != MISSING) {
+			attributes.put(key, strings.get(value));
+		}
+	}
+
+	private String string(TypeColumns columns, int row, String attribute) {
+		int[] column = columns.strings.get(attribute);
+		if (column != null) {
+			return column[row] == MISSING ? null : strings.get(column[row]);
+		}
+//		values of a string attribute may all be numbers in one row group
+		double[] numbers = columns.doubles.get(attribute);
+		return numbers == null || Double.isNaN(numbers[row]) ? null : Double.toString(numbers[row]);
+	}
+
+	private double number(TypeColumns columns, int row, String attribute, double defaultValue) {
+		double[] numbers = columns.doubles.get(attribute);
+		if (numbers != null) {
+			return Double.isNaN(numbers[row]) ? defaultValue : numbers[row];
+		}
+		String value = string(columns, row, attribute);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	private <T> Id<T> id(TypeColumns columns, int row, String attribute, Class<T> type) {
+		String value = string(columns, row, attribute);
+		return value == null ? null : Id.create(value, type);
+	}
+
+	private <T> Id<T> id(int value, Class<T> type) {
+		return value == MISSING ? null : Id.create(strings.get(value), type);
+	}
+
+	private Coord coord(TypeColumns columns, int row) {
+		double x = number(columns, row, "x", Double.NaN);
+		double y = number(columns, row, "y", Double.NaN);
+		return Double.isNaN(x) || Double.isNaN(y) ? null : new Coord(x, y);
+	}
+
+	/**
+	 * Columns of the events of one type in one row group, as written by {@link BinaryEventsWriter}.
+	 */
+	private record TypeColumns(String type, double[] time, int[] person, int[] link, int[] vehicle,
+		Map<String, int[]> strings, Map<String, double[]> doubles) {
+
+		private static TypeColumns read(DataInputStream data, String type) throws IOException {
+			int rows = data.readInt();
+			double[] time = readDoubles(data, rows);
+			int[] person = readInts(data, rows);
+			int[] link = readInts(data, rows);
+			int[] vehicle = readInts(data, rows);
+
+			int n = data.readInt();
+			Map<String, int[]> strings = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				strings.put(readString(data), readInts(data, rows));
+			}
+
+			n = data.readInt();
+			Map<String, double[]> doubles = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				doubles.put(readString(data), readDoubles(data, rows));
+			}
+			return new TypeColumns(type, time, person, link, vehicle, strings, doubles);
+		}
+	}
+}
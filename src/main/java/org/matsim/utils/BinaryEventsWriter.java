@@ -0,0 +1,305 @@
+package org.matsim.utils;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.events.algorithms.EventWriter;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes events in a columnar layout to a binary file, which can be replayed with {@link BinaryEventsReader}.
+ * Events are collected in row groups of a fixed number of events, which are written as soon as they are full, so that memory usage
+ * does not depend on the number of events. Within a row group, time, person, link and vehicle of every event type are stored
+ * as primitive columns. All other attributes are stored as one column per attribute name, either as double column if all values
+ * are numbers, which are written exactly like this by {@link Double#toString}, or as dictionary encoded strings.
+ * Ids and other strings are dictionary encoded over the whole file, missing values are stored as {@link #MISSING} or NaN.
+ * The file is gzip compressed if its name ends with {@code .gz}.
+ */
+public final class BinaryEventsWriter implements BasicEventHandler, EventWriter {
+
+	static final int MAGIC = 0x4d455645;
+	static final int VERSION = 2;
+	static final int MISSING = -1;
+	static final int ROW_GROUP_SIZE = 1 << 16;
+
+	static final String TIME = "time";
+	static final String TYPE = "type";
+	static final String PERSON = "person";
+	static final String LINK = "link";
+	static final String VEHICLE = "vehicle";
+
+	private final DataOutputStream data;
+	private final int rowGroupSize;
+
+	private final Object2IntOpenHashMap<String> dictionary = new Object2IntOpenHashMap<>();
+//	strings, which were added to the dictionary after the last row group has been written
+	private final List<String> newStrings = new ArrayList<>();
+	private final Map<String, TypeColumns> columns = new HashMap<>();
+	private final List<TypeColumns> types = new ArrayList<>();
+	private int writtenTypes;
+//	type index of every event of the current row group in original order, needed to replay the events in this order
+	private final IntArrayList order;
+	private long numberOfEvents;
+
+	public BinaryEventsWriter(Path file) throws IOException {
+		this(file, ROW_GROUP_SIZE);
+	}
+
+	BinaryEventsWriter(Path file, int rowGroupSize) throws IOException {
+		if (rowGroupSize < 1) {
+			throw new IllegalArgumentException("Row group size has to be at least 1, but is " + rowGroupSize + "!");
+		}
+		this.rowGroupSize = rowGroupSize;
+		this.order = new IntArrayList(rowGroupSize);
+		dictionary.defaultReturnValue(MISSING);
+
+		OutputStream out = Files.newOutputStream(file);
+		if (file.getFileName().toString().endsWith(".gz")) {
+			out = new GZIPOutputStream(out, 1 << 16);
+		}
+		data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		TypeColumns typeColumns = columns.computeIfAbsent(event.getEventType(), type -> {
+			types.add(new TypeColumns(type));
+			return types.getLast();
+		});
+		order.add(typeColumns.index);
+		typeColumns.add(event.getEventTime(), event.getAttributes());
+		numberOfEvents++;
+
+		if (order.size() == rowGroupSize) {
+			try {
+				writeRowGroup();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Write the last row group and close the file.
+	 */
+	@Override
+	public void closeFile() {
+		try {
+			if (!order.isEmpty()) {
+				writeRowGroup();
+			}
+//			a row group without events marks the end of the file
+			data.writeInt(0);
+			data.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Number of written events.
+	 */
+	public long getNumberOfEvents() {
+		return numberOfEvents;
+	}
+
+	/**
+	 * Write a string with its length in bytes. Unlike {@link DataOutputStream#writeUTF}, there is no limit of 64 KB.
+	 */
+	static void writeString(DataOutputStream data, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	private void writeRowGroup() throws IOException {
+//		encoding the attributes may add strings to the dictionary, which have to be written before the columns
+		List<TypeColumns> present = types.stream().filter(type -> !type.time.isEmpty()).toList();
+		for (TypeColumns type : present) {
+			type.encodeAttributes();
+		}
+
+		data.writeInt(order.size());
+
+		data.writeInt(newStrings.size());
+		for (String s : newStrings) {
+			writeString(data, s);
+		}
+		newStrings.clear();
+
+		data.writeInt(types.size() - writtenTypes);
+		for (int i = writtenTypes; i < types.size(); i++) {
+			writeString(data, types.get(i).type);
+		}
+		writtenTypes = types.size();
+
+		writeInts(data, order);
+		order.clear();
+
+		data.writeInt(present.size());
+		for (TypeColumns type : present) {
+			data.writeInt(type.index);
+			type.write();
+		}
+	}
+
+	private static void writeInts(DataOutputStream data, IntArrayList values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			data.writeInt(values.getInt(i));
+		}
+	}
+
+	private int encode(String value) {
+		if (value == null) {
+			return MISSING;
+		}
+		int index = dictionary.getInt(value);
+		if (index == MISSING) {
+			index = dictionary.size();
+			newStrings.add(value);
+			dictionary.put(value, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Parse the value as double if it is written exactly like this by {@link Double#toString}, so that it can be restored unchanged.
+	 * NaN is used for missing values and thus not accepted.
+	 *
+	 * @return the value or NaN if it can not be stored as double
+	 */
+	private static double toDouble(String value) {
+		if (value.isEmpty() || !(Character.isDigit(value.charAt(value.length() - 1)) || value.endsWith("Infinity"))) {
+			return Double.NaN;
+		}
+		try {
+			double d = Double.parseDouble(value);
+			return Double.toString(d).equals(value) ? d : Double.NaN;
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Columns of the events of one type in the current row group.
+	 */
+	private final class TypeColumns {
+		private final String type;
+		private final int index;
+		private final DoubleArrayList time = new DoubleArrayList();
+		private final IntArrayList person = new IntArrayList();
+		private final IntArrayList link = new IntArrayList();
+		private final IntArrayList vehicle = new IntArrayList();
+//		raw values, the encoding of every attribute is chosen when the row group is written
+		private final Map<String, List<String>> attributes = new LinkedHashMap<>();
+		private final Map<String, int[]> stringColumns = new LinkedHashMap<>();
+		private final Map<String, double[]> doubleColumns = new LinkedHashMap<>();
+
+		private TypeColumns(String type) {
+			this.type = type;
+			this.index = types.size();
+		}
+
+		private void add(double eventTime, Map<String, String> values) {
+			int row = time.size();
+			time.add(eventTime);
+			person.add(encode(values.get(PERSON)));
+			link.add(encode(values.get(LINK)));
+			vehicle.add(encode(values.get(VEHICLE)));
+
+			for (Map.Entry<String, String> value : values.entrySet()) {
+				String key = value.getKey();
+				if (key.equals(TIME) || key.equals(TYPE) || key.equals(PERSON) || key.equals(LINK) || key.equals(VEHICLE)) {
+					continue;
+				}
+				List<String> column = attributes.computeIfAbsent(key, k -> new ArrayList<>());
+//				earlier events of this type did not have this attribute
+				while (column.size() < row) {
+					column.add(null);
+				}
+				column.add(value.getValue());
+			}
+		}
+
+		private void encodeAttributes() {
+			int rows = time.size();
+			for (Map.Entry<String, List<String>> attribute : attributes.entrySet()) {
+				List<String> values = attribute.getValue();
+
+				double[] numbers = new double[rows];
+				Arrays.fill(numbers, Double.NaN);
+				boolean numeric = true;
+				for (int i = 0; i < values.size() && numeric; i++) {
+					if (values.get(i) != null) {
+						numbers[i] = toDouble(values.get(i));
+						numeric = !Double.isNaN(numbers[i]);
+					}
+				}
+
+				if (numeric) {
+					doubleColumns.put(attribute.getKey(), numbers);
+				} else {
+					int[] encoded = new int[rows];
+					Arrays.fill(encoded, MISSING);
+					for (int i = 0; i < values.size(); i++) {
+						encoded[i] = encode(values.get(i));
+					}
+					stringColumns.put(attribute.getKey(), encoded);
+				}
+			}
+			attributes.clear();
+		}
+
+		private void write() throws IOException {
+			data.writeInt(time.size());
+			for (int i = 0; i < time.size(); i++) {
+				data.writeDouble(time.getDouble(i));
+			}
+			writeInts(data, person);
+			writeInts(data, link);
+			writeInts(data, vehicle);
+
+			data.writeInt(stringColumns.size());
+			for (Map.Entry<String, int[]> column : stringColumns.entrySet()) {
+				writeString(data, column.getKey());
+				for (int value : column.getValue()) {
+					data.writeInt(value);
+				}
+			}
+
+			data.writeInt(doubleColumns.size());
+			for (Map.Entry<String, double[]> column : doubleColumns.entrySet()) {
+				writeString(data, column.getKey());
+				for (double value : column.getValue()) {
+					data.writeDouble(value);
+				}
+			}
+
+			time.clear();
+			person.clear();
+			link.clear();
+			vehicle.clear();
+			stringColumns.clear();
+			doubleColumns.clear();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.ControllerConfigGroup;
+import org.matsim.core.events.MatsimEventsReader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an events file written by {@link ConvertEventsToBlocks}. Only the blocks whose time range and event types match the
+ * requested ones are decompressed, several blocks in parallel. The events of the matching blocks are passed to the events
+ * manager in their original order.
+ * Usage: {@code new BlockedEventsReader(manager).timeWindow(6 * 3600, 9 * 3600).types(Set.of("personMoney")).readFile(path)}.
+ */
+public final class BlockedEventsReader {
+	private static final Logger log = LogManager.getLogger(BlockedEventsReader.class);
+
+	static final String INDEX_SUFFIX = ".blocks.csv";
+	static final String INDEX_HEADER = "offset,length,start_time,end_time,events,types";
+	static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n";
+	static final String XML_FOOTER = "</events>\n";
+
+	private static final String TIME_ATTRIBUTE = " time=\"";
+	private static final String TYPE_ATTRIBUTE = " type=\"";
+
+	private final EventsManager manager;
+	private double startTime = Double.NEGATIVE_INFINITY;
+	private double endTime = Double.POSITIVE_INFINITY;
+	private Set<String> types;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	public BlockedEventsReader(EventsManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Only read events with {@code startTime <= time <= endTime}.
+	 */
+	public BlockedEventsReader timeWindow(double startTime, double endTime) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+		return this;
+	}
+
+	/**
+	 * Only read events of the given types.
+	 */
+	public BlockedEventsReader types(Set<String> types) {
+		this.types = types;
+		return this;
+	}
+
+	/**
+	 * Number of blocks, which are decompressed in parallel. Defaults to the number of available processors.
+	 */
+	public BlockedEventsReader threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Path of the block index, which belongs to the given events file.
+	 */
+	public static Path getIndexFile(Path eventsFile) {
+		return eventsFile.resolveSibling(eventsFile.getFileName() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Read all matching events of the given file. The manager is neither initialized nor finished by this method.
+	 */
+	public void readFile(Path eventsFile) throws IOException {
+		List<Block> allBlocks = readIndex(getIndexFile(eventsFile));
+		List<Block> blocks = allBlocks.stream().filter(this::matches).toList();
+		log.info("Reading {} of {} blocks from {}", blocks.size(), allBlocks.size(), eventsFile);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try (FileChannel channel = FileChannel.open(eventsFile, StandardOpenOption.READ)) {
+			BlockEnumeration enumeration = new BlockEnumeration(executor, channel, blocks);
+			new MatsimEventsReader(manager).readStream(new SequenceInputStream(enumeration), ControllerConfigGroup.EventsFileFormat.xml);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	static List<Block> readIndex(Path indexFile) throws IOException {
+		List<Block> blocks = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(indexFile)) {
+			String line = reader.readLine();
+			if (!INDEX_HEADER.equals(line)) {
+				throw new IllegalArgumentException("File " + indexFile + " is not a block index of an events file!");
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split(",", -1);
+				blocks.add(new Block(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Double.parseDouble(parts[2]),
+					Double.parseDouble(parts[3]), Integer.parseInt(parts[4]), Set.of(parts[5].split(";"))));
+			}
+		}
+		return blocks;
+	}
+
+	private boolean matches(Block block) {
+		if (block.endTime() < startTime || block.startTime() > endTime) {
+			return false;
+		}
+		return types == null || types.stream().anyMatch(block.types()::contains);
+	}
+
+	/**
+	 * Decompress one block and keep only the lines of matching events.
+	 */
+	private byte[] decompress(FileChannel channel, Block block) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(block.length());
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, block.offset() + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file while reading block at offset " + block.offset());
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(block.length() * 8);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+			new GZIPInputStream(new ByteArrayInputStream(buffer.array())), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (matches(line)) {
+					out.write(line.getBytes(StandardCharsets.UTF_8));
+					out.write('\n');
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private boolean matches(String line) {
+		int timeStart = line.indexOf(TIME_ATTRIBUTE);
+		if (timeStart < 0) {
+			return false;
+		}
+		timeStart += TIME_ATTRIBUTE.length();
+		double time = Double.parseDouble(line.substring(timeStart, line.indexOf('"', timeStart)));
+		if (time < startTime || time > endTime) {
+			return false;
+		}
+		if (types == null) {
+			return true;
+		}
+		int typeStart = line.indexOf(TYPE_ATTRIBUTE);
+		if (typeStart < 0) {
+			return false;
+		}
+		typeStart += TYPE_ATTRIBUTE.length();
+		return types.contains(line.substring(typeStart, line.indexOf('"', typeStart)));
+	}
+
+	/**
+	 * Entry of the block index.
+	 *
+	 * @param offset    position of the gzip member in the events file
+	 * @param length    compressed size of the block in bytes
+	 * @param startTime time of the first event of the block
+	 * @param endTime   time of the last event of the block
+	 * @param events    number of events in the block
+	 * @param types     all event types in the block
+	 */
+	record Block(long offset, int length, double startTime, double endTime, int events, Set<String> types) {
+	}
+
+	/**
+	 * Provides the xml header, the filtered blocks in file order and the xml footer. At most {@code 2 * threads} blocks are decompressed
+	 * ahead of the parser, so that memory usage does not depend on the number of matching blocks.
+	 */
+	private final class BlockEnumeration implements Enumeration<InputStream> {
+		private final ExecutorService executor;
+		private final FileChannel channel;
+		private final List<Block> blocks;
+		private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+		private int submitted;
+		private boolean headerDone;
+		private boolean footerDone;
+
+		private BlockEnumeration(ExecutorService executor, FileChannel channel, List<Block> blocks) {
+			this.executor = executor;
+			this.channel = channel;
+			this.blocks = blocks;
+			fill();
+		}
+
+		private void fill() {
+			while (pending.size() < 2 * Math.max(1, threads) && submitted < blocks.size()) {
+				Block block = blocks.get(submitted++);
+				pending.add(executor.submit(() -> decompress(channel, block)));
+			}
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			return !footerDone;
+		}
+
+		@Override
+		public InputStream nextElement() {
+			if (!headerDone) {
+				headerDone = true;
+				return new ByteArrayInputStream(XML_HEADER.getBytes(StandardCharsets.UTF_8));
+			}
+			if (!pending.isEmpty()) {
+				byte[] data = await(pending.poll());
+				fill();
+				return new ByteArrayInputStream(data);
+			}
+			if (footerDone) {
+				throw new NoSuchElementException();
+			}
+			footerDone = true;
+			return new ByteArrayInputStream(XML_FOOTER.getBytes(StandardCharsets.UTF_8));
+		}
+
+		private byte[] await(Future<byte[]> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reading events blocks.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException io) {
+					throw new UncheckedIOException(io);
+				}
+				throw new IllegalStateException("Could not read events block.", e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+@CommandLine.Command(
+	name = "events-to-binary",
+	description = "Export the events file of a run to a binary columnar file, which can be replayed much faster with the BinaryEventsReader."
+)
+public class ConvertEventsToBinary implements MATSimAppCommand {
+	private static final Logger log = LogManager.getLogger(ConvertEventsToBinary.class);
+
+	@CommandLine.Parameters(arity = "1..*", description = "Path to run output directories.")
+	private List<Path> inputPaths;
+	@CommandLine.Option(names = "--uncompressed", description = "Write the binary file without gzip compression. Larger, but faster to read.", defaultValue = "false")
+	private boolean uncompressed;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
+
+	public static void main(String[] args) {
+		new ConvertEventsToBinary().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> {
+			Path eventsFile = globFile(runDir, "*output_events.xml.gz");
+			String name = eventsFile.getFileName().toString().replace(".xml.gz", uncompressed ? ".bin" : ".bin.gz");
+			Path outPath = eventsFile.resolveSibling(name);
+
+//			events are written in row groups while the xml file is read
+			BinaryEventsWriter writer = new BinaryEventsWriter(outPath);
+			EventsManager manager = EventsUtils.createEventsManager();
+			manager.addHandler(writer);
+			manager.initProcessing();
+
+			MatsimEventsReader reader = new MatsimEventsReader(manager);
+			reader.readFile(eventsFile.toString());
+			manager.finishProcessing();
+
+			writer.closeFile();
+			log.info("{} events written to {}", writer.getNumberOfEvents(), outPath);
+			return 0;
+		});
+	}
+}
@@ -0,0 +1,160 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.utils.io.IOUtils;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import static org.matsim.application.ApplicationUtils.globFile;
+
+@CommandLine.Command(
+	name = "events-to-blocks",
+	description = "Re-encode the events file of a run into independently compressed blocks with an index of time range and event types per block." +
+		" The result is still a valid gzip compressed events file, but can also be read partially with the BlockedEventsReader."
+)
+public class ConvertEventsToBlocks implements MATSimAppCommand {
+	private static final Logger log = LogManager.getLogger(ConvertEventsToBlocks.class);
+
+	private static final String TIME_ATTRIBUTE = " time=\"";
+	private static final String TYPE_ATTRIBUTE = " type=\"";
+
+	@CommandLine.Parameters(arity = "1..*", description = "Path to run output directories.")
+	private List<Path> inputPaths;
+	@CommandLine.Option(names = "--block-size", description = "Number of events per block.", defaultValue = "100000")
+	private int blockSize;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
+
+	public static void main(String[] args) {
+		new ConvertEventsToBlocks().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size has to be at least 1, but is " + blockSize + "!");
+		}
+
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> {
+			Path eventsFile = globFile(runDir, "*output_events.xml.gz");
+//			suffix instead of prefix, so that the pattern for the original events file does not match the output
+			Path outPath = eventsFile.resolveSibling(eventsFile.getFileName().toString().replace(".xml.gz", "_blocks.xml.gz"));
+			int blocks = convert(eventsFile, outPath, blockSize);
+			log.info("{} blocks written to {}", blocks, outPath);
+			return 0;
+		});
+	}
+
+	/**
+	 * Copy all events lines of the input file into gzip members of {@code blockSize} events each. The xml header and footer are written
+	 * as separate members, which are not part of the index.
+	 *
+	 * @return number of written blocks
+	 */
+	static int convert(Path eventsFile, Path outPath, int blockSize) throws IOException {
+		Block block = new Block();
+		int blocks = 0;
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(eventsFile.toString());
+			 OutputStream out = Files.newOutputStream(outPath);
+			 BufferedWriter index = Files.newBufferedWriter(BlockedEventsReader.getIndexFile(outPath))) {
+			index.write(BlockedEventsReader.INDEX_HEADER);
+			index.newLine();
+
+			long offset = writeMember(out, BlockedEventsReader.XML_HEADER.getBytes(StandardCharsets.UTF_8));
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+//				header, root element and empty lines are replaced by the members written before and after the blocks
+				int timeStart = line.indexOf(TIME_ATTRIBUTE);
+				if (timeStart < 0) {
+					continue;
+				}
+				block.add(line, timeStart);
+
+				if (block.events == blockSize) {
+					offset += block.write(out, index, offset);
+					blocks++;
+				}
+			}
+
+			if (block.events > 0) {
+				offset += block.write(out, index, offset);
+				blocks++;
+			}
+			writeMember(out, BlockedEventsReader.XML_FOOTER.getBytes(StandardCharsets.UTF_8));
+		}
+		return blocks;
+	}
+
+	private static long writeMember(OutputStream out, byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(data);
+		}
+		compressed.writeTo(out);
+		return compressed.size();
+	}
+
+	/**
+	 * Events lines of the block, which is currently filled.
+	 */
+	private static final class Block {
+		private final StringBuilder content = new StringBuilder();
+		private final Set<String> types = new TreeSet<>();
+		private double startTime;
+		private double endTime;
+		private int events;
+
+		private void add(String line, int timeStart) {
+			int valueStart = timeStart + TIME_ATTRIBUTE.length();
+			double time = Double.parseDouble(line.substring(valueStart, line.indexOf('"', valueStart)));
+			if (events == 0) {
+				startTime = time;
+				endTime = time;
+			}
+			startTime = Math.min(startTime, time);
+			endTime = Math.max(endTime, time);
+
+			int typeStart = line.indexOf(TYPE_ATTRIBUTE);
+			if (typeStart >= 0) {
+				typeStart += TYPE_ATTRIBUTE.length();
+				types.add(line.substring(typeStart, line.indexOf('"', typeStart)));
+			}
+
+			content.append(line).append('\n');
+			events++;
+		}
+
+		/**
+		 * Write the block and its index entry and reset it afterward.
+		 *
+		 * @return compressed size of the block
+		 */
+		private long write(OutputStream out, BufferedWriter index, long offset) throws IOException {
+			long length = writeMember(out, content.toString().getBytes(StandardCharsets.UTF_8));
+
+			index.write(offset + "," + length + "," + startTime + "," + endTime + "," + events + "," + String.join(";", types));
+			index.newLine();
+
+			content.setLength(0);
+			types.clear();
+			events = 0;
+			return length;
+		}
+	}
+}
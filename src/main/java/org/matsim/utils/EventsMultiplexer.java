@@ -0,0 +1,76 @@
+package org.matsim.utils;
+
+import com.google.common.base.Stopwatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.events.handler.EventHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an events file once and passes every event to several analyses. Every handler of an analysis is registered on its own events
+ * manager, so that the time spent in each handler can be measured separately.
+ */
+public final class EventsMultiplexer implements BasicEventHandler {
+	private static final Logger log = LogManager.getLogger(EventsMultiplexer.class);
+
+	private final List<String> names = new ArrayList<>();
+	private final List<EventsManager> managers = new ArrayList<>();
+	private final Stopwatch[] stopwatches;
+
+	private EventsMultiplexer(Map<String, SharedEventsAnalysis> analyses) throws IOException {
+		for (Map.Entry<String, SharedEventsAnalysis> e : analyses.entrySet()) {
+			for (EventHandler handler : e.getValue().createHandlers()) {
+				EventsManager manager = EventsUtils.createEventsManager();
+				manager.addHandler(handler);
+				names.add(e.getKey() + " (" + handler.getClass().getSimpleName() + ")");
+				managers.add(manager);
+			}
+		}
+		this.stopwatches = new Stopwatch[managers.size()];
+		Arrays.setAll(stopwatches, i -> Stopwatch.createUnstarted());
+	}
+
+	/**
+	 * Read the events file once for all given analyses and log the time spent in each handler of the analyses.
+	 * The {@link SharedEventsAnalysis#finish()} stage of the analyses is not run by this method.
+	 */
+	public static void readEvents(String eventsFile, Map<String, SharedEventsAnalysis> analyses) throws IOException {
+		EventsMultiplexer multiplexer = new EventsMultiplexer(analyses);
+
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(multiplexer);
+		multiplexer.managers.forEach(EventsManager::initProcessing);
+		manager.initProcessing();
+
+		Stopwatch total = Stopwatch.createStarted();
+		MatsimEventsReader reader = new MatsimEventsReader(manager);
+		reader.readFile(eventsFile);
+		manager.finishProcessing();
+		multiplexer.managers.forEach(EventsManager::finishProcessing);
+
+		log.info("Read {} once for {} analyses with {} handlers in {} s", eventsFile, analyses.size(), multiplexer.managers.size(), total.elapsed(TimeUnit.SECONDS));
+		for (int i = 0; i < multiplexer.names.size(); i++) {
+			log.info("Time spent in event handler of {}: {} ms", multiplexer.names.get(i), multiplexer.stopwatches[i].elapsed(TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		for (int i = 0; i < managers.size(); i++) {
+			stopwatches[i].start();
+			managers.get(i).processEvent(event);
+			stopwatches[i].stop();
+		}
+	}
+}
@@ -8,10 +8,14 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.events.handler.EventHandler;
 import org.matsim.core.utils.io.IOUtils;
 import picocli.CommandLine;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -21,7 +25,8 @@ import static org.matsim.run.scenarios.LausitzScenario.SLASH;
 @CommandLine.Command(
 	name = "exclude-events",
 	description = "Helper class for filtering agents based on a given list/file of event types." +
-		"The event types in the list will be ignored for writing the filtered events file to make events reading faster."
+		"The event types in the list will be ignored for writing the filtered events file to make events reading faster." +
+		"Alternatively, a list of event types to keep can be given."
 )
 public class ExcludeEventTypes implements MATSimAppCommand {
 	private static final Logger log = LogManager.getLogger(ExcludeEventTypes.class);
@@ -30,8 +35,15 @@ public class ExcludeEventTypes implements MATSimAppCommand {
 	private List<Path> inputPaths;
 	@CommandLine.Option(names = "--event-types", split = ",", description = "Comma-separated list of event types to filter out.")
 	Set<String> types;
+	@CommandLine.Option(names = "--keep-event-types", split = ",", description = "Comma-separated list of event types to keep. All other types are filtered out.")
+	Set<String> keepTypes;
+	@CommandLine.Option(names = "--use-events-reader", description = "Parse all events with the MATSim events reader instead of only checking the type attribute of each line." +
+		" Slower, but independent of the line layout of the events file.", defaultValue = "false")
+	private boolean useEventsReader;
 	@CommandLine.Option(names = "--prefix", description = "Prefix for filtered events output file, optional.", defaultValue = "types_")
 	private String prefix;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
 
 	public static void main(String[] args) {
 		new ExcludeEventTypes().execute(args);
@@ -40,56 +52,109 @@ public class ExcludeEventTypes implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 
-		for (Path runDir : inputPaths) {
-			log.info("Running on {}", runDir);
-			log.info("This class will filter out the following event types:");
-			types.forEach(log::info);
+		if ((types == null) == (keepTypes == null)) {
+			throw new IllegalArgumentException("Either --event-types or --keep-event-types has to be defined!");
+		}
+		boolean include = keepTypes != null;
+		Set<String> filterTypes = include ? keepTypes : types;
+
+		log.info(include ? "This class will only keep the following event types:" : "This class will filter out the following event types:");
+		filterTypes.forEach(log::info);
 
-			String eventsFile = globFile(runDir, "*output_events.xml.gz").toString();
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> filterEvents(runDir, filterTypes, include));
+	}
+
+	/**
+	 * Create the filter of the given run for a shared pass over its events with other analyses, see {@link EventsMultiplexer}.
+	 * The events are written by the events handler in this case, the raw line filter is not used.
+	 */
+	public SharedEventsAnalysis createSharedAnalysis(Path runDir) {
+		if ((types == null) == (keepTypes == null)) {
+			throw new IllegalArgumentException("Either --event-types or --keep-event-types has to be defined!");
+		}
+		boolean include = keepTypes != null;
+		Set<String> filterTypes = include ? keepTypes : types;
+		String outPath = getOutputPath(runDir);
 
-			List<Event> filteredEvents = new ArrayList<>();
+		return new SharedEventsAnalysis() {
+			private FilterEventsHandler handler;
 
+			@Override
+			public List<EventHandler> createHandlers() throws IOException {
+				handler = new FilterEventsHandler(filterTypes, include, IOUtils.getBufferedWriter(outPath));
+				return List.of(handler);
+			}
+
+			@Override
+			public int finish() throws IOException {
+				handler.close();
+				log.info("Filtered events written to {}", outPath);
+				return 0;
+			}
+		};
+	}
+
+	private String getOutputPath(Path runDir) {
+		return (runDir.endsWith(SLASH)) ? runDir + prefix + "output_events_filtered.xml.gz" : runDir + SLASH + prefix + "output_events_filtered.xml.gz";
+	}
+
+	private int filterEvents(Path runDir, Set<String> filterTypes, boolean include) throws IOException {
+		String eventsFile = globFile(runDir, "*output_events.xml.gz").toString();
+		String outPath = getOutputPath(runDir);
+
+		if (!useEventsReader) {
+//			only the type attribute is checked, accepted lines are copied without parsing the event
+			long written = new RawEventsFilter(filterTypes, include).filter(eventsFile, outPath);
+			log.info("{} filtered events written to {}", written, outPath);
+			return 0;
+		}
+
+//		kept events are written directly, the output file is closed after all events have been processed
+		try (FilterEventsHandler handler = new FilterEventsHandler(filterTypes, include, IOUtils.getBufferedWriter(outPath))) {
 			EventsManager manager = EventsUtils.createEventsManager();
-			manager.addHandler(new FilterEventsHandler(types, filteredEvents));
+			manager.addHandler(handler);
 			manager.initProcessing();
 
 			MatsimEventsReader reader = new MatsimEventsReader(manager);
 			reader.readFile(eventsFile);
 			manager.finishProcessing();
-
-			//		for writing filtered events out of list
-			String outPath = (runDir.endsWith(SLASH)) ? runDir + prefix + "output_events_filtered.xml.gz" : runDir + SLASH + prefix + "output_events_filtered.xml.gz";
-
-			BufferedWriter eventsWriter = IOUtils.getBufferedWriter(outPath);
-			eventsWriter.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-			eventsWriter.newLine();
-			eventsWriter.write("<events version=\"1.0\">");
-			for (Event event : filteredEvents) {
-				eventsWriter.newLine();
-				eventsWriter.write(event.toString());
-			}
-			eventsWriter.newLine();
-			eventsWriter.write("</events>");
-			eventsWriter.close();
-			log.info("Filtered events written to {}", outPath);
 		}
+		log.info("Filtered events written to {}", outPath);
 		return 0;
 	}
 
-	private static final class FilterEventsHandler implements BasicEventHandler {
+	private static final class FilterEventsHandler implements BasicEventHandler, Closeable {
 		Set<String> types;
-		List<Event> filteredEvents;
+		boolean include;
+		BufferedWriter eventsWriter;
 
-		private FilterEventsHandler(Set<String> types, List<Event> filteredEvents) {
+		private FilterEventsHandler(Set<String> types, boolean include, BufferedWriter eventsWriter) throws IOException {
 			this.types = types;
-			this.filteredEvents = filteredEvents;
+			this.include = include;
+			this.eventsWriter = eventsWriter;
+
+			eventsWriter.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+			eventsWriter.newLine();
+			eventsWriter.write("<events version=\"1.0\">");
 		}
 
 		@Override
 		public void handleEvent(Event event) {
-			if (!types.contains(event.getEventType())) {
-				filteredEvents.add(event);
+			if (types.contains(event.getEventType()) == include) {
+				try {
+					eventsWriter.newLine();
+					eventsWriter.write(event.toString());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
 			}
 		}
+
+		@Override
+		public void close() throws IOException {
+			eventsWriter.newLine();
+			eventsWriter.write("</events>");
+			eventsWriter.close();
+		}
 	}
 }
@@ -3,6 +3,7 @@ package org.matsim.utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdSet;
 import org.matsim.api.core.v01.events.*;
 import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
 import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
@@ -13,14 +14,17 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
 import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.events.handler.EventHandler;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.vehicles.Vehicle;
 import picocli.CommandLine;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -40,6 +44,8 @@ public class FilterEventsForSpecificAgents implements MATSimAppCommand {
 	private List<Path> inputPaths;
 	@CommandLine.Option(names = "--prefix", description = "Prefix for filtered events output file, optional.", defaultValue = "")
 	private String prefix;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
 
 	public static void main(String[] args) {
 		new FilterEventsForSpecificAgents().execute(args);
@@ -48,9 +54,7 @@ public class FilterEventsForSpecificAgents implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 
-		for (Path runDir : inputPaths) {
-			log.info("Running on {}", runDir);
-
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> {
 			String eventsFile = globFile(runDir, "*output_events.xml.gz").toString();
 
 //			get absolute path out of potentially relative agentsPath.
@@ -60,10 +64,9 @@ public class FilterEventsForSpecificAgents implements MATSimAppCommand {
 			//		read csv file with agentIds
 			Set<Id<Person>> agentSet = readPersonsCsv(absoluteAgentsPath.toString());
 
-			filterAndWriteEvents(eventsFile, agentSet, new ArrayList<>(), runDir.toString());
-		}
-
-		return 0;
+			filterAndWriteEvents(eventsFile, agentSet, runDir.toString());
+			return 0;
+		});
 	}
 
 	/**
@@ -88,58 +91,82 @@ public class FilterEventsForSpecificAgents implements MATSimAppCommand {
 		return agentSet;
 	}
 
-	private void filterAndWriteEvents(String eventsFile, Set<Id<Person>> agentSet, List<Event> filteredEvents, String runDir) throws IOException {
-		EventsManager manager = EventsUtils.createEventsManager();
-		manager.addHandler(new PersonFilterEventsHandler(agentSet, filteredEvents));
-		manager.initProcessing();
+	/**
+	 * Create the filter of the given run for a shared pass over its events with other analyses, see {@link EventsMultiplexer}.
+	 */
+	public SharedEventsAnalysis createSharedAnalysis(Path runDir) throws IOException {
+		Set<Id<Person>> agentSet = readPersonsCsv(runDir.resolve(agentsPath).normalize().toString());
+		String outPath = getOutputPath(runDir.toString());
 
-		MatsimEventsReader reader = new MatsimEventsReader(manager);
-		reader.readFile(eventsFile);
-		manager.finishProcessing();
+		return new SharedEventsAnalysis() {
+			private PersonFilterEventsHandler handler;
 
-		//		for writing filtered events out of list
-		String outPath = (runDir.endsWith(SLASH)) ? runDir + prefix + "output_events_filtered.xml.gz" : runDir + SLASH + prefix + "output_events_filtered.xml.gz";
+			@Override
+			public List<EventHandler> createHandlers() throws IOException {
+				handler = new PersonFilterEventsHandler(agentSet, IOUtils.getBufferedWriter(outPath));
+				return List.of(handler);
+			}
 
-		BufferedWriter eventsWriter = IOUtils.getBufferedWriter(outPath);
-		eventsWriter.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-		eventsWriter.newLine();
-		eventsWriter.write("<events version=\"1.0\">");
-		for (Event event : filteredEvents) {
-			eventsWriter.newLine();
-			eventsWriter.write(event.toString());
+			@Override
+			public int finish() throws IOException {
+				handler.close();
+				log.info("Filtered events written to {}", outPath);
+				return 0;
+			}
+		};
+	}
+
+	private String getOutputPath(String runDir) {
+		return (runDir.endsWith(SLASH)) ? runDir + prefix + "output_events_filtered.xml.gz" : runDir + SLASH + prefix + "output_events_filtered.xml.gz";
+	}
+
+	private void filterAndWriteEvents(String eventsFile, Set<Id<Person>> agentSet, String runDir) throws IOException {
+		String outPath = getOutputPath(runDir);
+
+//		matching events are written directly, the output file is closed after all events have been processed
+		try (PersonFilterEventsHandler handler = new PersonFilterEventsHandler(agentSet, IOUtils.getBufferedWriter(outPath))) {
+			EventsManager manager = EventsUtils.createEventsManager();
+			manager.addHandler(handler);
+			manager.initProcessing();
+
+			MatsimEventsReader reader = new MatsimEventsReader(manager);
+			reader.readFile(eventsFile);
+			manager.finishProcessing();
 		}
-		eventsWriter.newLine();
-		eventsWriter.write("</events>");
-		eventsWriter.close();
 		log.info("Filtered events written to {}", outPath);
 	}
 
-	private static final class PersonFilterEventsHandler implements BasicEventHandler, LinkEnterEventHandler, LinkLeaveEventHandler {
-		Set<Id<Person>> agentSet;
-		List<Event> filteredEvents;
-		Map<Id<Vehicle>, Set<Id<Person>>> person2Vehicle = new HashMap<>();
-		private PersonFilterEventsHandler(Set<Id<Person>> agentSet, List<Event> filteredEvents) {
-			this.agentSet = agentSet;
-			this.filteredEvents = filteredEvents;
+	private static final class PersonFilterEventsHandler implements BasicEventHandler, LinkEnterEventHandler, LinkLeaveEventHandler, Closeable {
+		IdSet<Person> agentSet = new IdSet<>(Person.class);
+		BufferedWriter eventsWriter;
+//		number of our agents per vehicle, indexed by vehicle id index
+		int[] occupancy = new int[1024];
+
+		private PersonFilterEventsHandler(Set<Id<Person>> agentSet, BufferedWriter eventsWriter) throws IOException {
+			this.agentSet.addAll(agentSet);
+			this.eventsWriter = eventsWriter;
+
+			eventsWriter.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+			eventsWriter.newLine();
+			eventsWriter.write("<events version=\"1.0\">");
 		}
 
 		@Override
 		public void handleEvent(Event event) {
 			if (event instanceof HasPersonId hasPersonId && agentSet.contains(hasPersonId.getPersonId())) {
-				filteredEvents.add(event);
+				write(event);
 
 				if (event instanceof PersonEntersVehicleEvent personEntersVehicleEvent) {
 //					we want to track vehicles which our agents enter
-					person2Vehicle.putIfAbsent(personEntersVehicleEvent.getVehicleId(), new HashSet<>());
-					person2Vehicle.get(personEntersVehicleEvent.getVehicleId()).add(personEntersVehicleEvent.getPersonId());
+					int vehicle = personEntersVehicleEvent.getVehicleId().index();
+					if (vehicle >= occupancy.length) {
+						occupancy = Arrays.copyOf(occupancy, Math.max(vehicle + 1, occupancy.length * 2));
+					}
+					occupancy[vehicle]++;
 				}
 
-				if (event instanceof PersonLeavesVehicleEvent personLeavesVehicleEvent && this.person2Vehicle.containsKey(personLeavesVehicleEvent.getVehicleId())) {
-					person2Vehicle.get(personLeavesVehicleEvent.getVehicleId()).remove(personLeavesVehicleEvent.getPersonId());
-//					remove vehicle from map if person set is empty
-					if (person2Vehicle.get(personLeavesVehicleEvent.getVehicleId()).isEmpty()) {
-						person2Vehicle.remove(personLeavesVehicleEvent.getVehicleId());
-					}
+				if (event instanceof PersonLeavesVehicleEvent personLeavesVehicleEvent && isOccupied(personLeavesVehicleEvent.getVehicleId())) {
+					occupancy[personLeavesVehicleEvent.getVehicleId().index()]--;
 				}
 			}
 		}
@@ -147,16 +174,37 @@ public class FilterEventsForSpecificAgents implements MATSimAppCommand {
 		@Override
 		public void handleEvent(LinkEnterEvent event) {
 //			add event if one of our filtered agents is in the vehicle
-			if (person2Vehicle.containsKey(event.getVehicleId())) {
-				filteredEvents.add(event);
+			if (isOccupied(event.getVehicleId())) {
+				write(event);
 			}
 		}
 
 		@Override
 		public void handleEvent(LinkLeaveEvent event) {
-			if (person2Vehicle.containsKey(event.getVehicleId())) {
-				filteredEvents.add(event);
+			if (isOccupied(event.getVehicleId())) {
+				write(event);
+			}
+		}
+
+		private boolean isOccupied(Id<Vehicle> vehicleId) {
+			int vehicle = vehicleId.index();
+			return vehicle < occupancy.length && occupancy[vehicle] > 0;
+		}
+
+		private void write(Event event) {
+			try {
+				eventsWriter.newLine();
+				eventsWriter.write(event.toString());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
 		}
+
+		@Override
+		public void close() throws IOException {
+			eventsWriter.newLine();
+			eventsWriter.write("</events>");
+			eventsWriter.close();
+		}
 	}
 }
@@ -4,13 +4,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.api.core.v01.population.Population;
 import org.matsim.application.MATSimAppCommand;
-import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -29,6 +30,8 @@ public class FilterSpecificAgentsFromPopulation implements MATSimAppCommand {
 	private List<Path> inputPaths;
 	@CommandLine.Option(names = "--suffix", description = "Suffix for filtered plans output file, optional.", defaultValue = "")
 	private String suffix;
+	@CommandLine.Option(names = "--threads", description = "Number of run directories to process in parallel.", defaultValue = "1")
+	private int threads;
 
 	public static void main(String[] args) {
 		new FilterSpecificAgentsFromPopulation().execute(args);
@@ -39,22 +42,27 @@ public class FilterSpecificAgentsFromPopulation implements MATSimAppCommand {
 		//		read csv file with agentIds
 		Set<Id<Person>> agentSet = FilterEventsForSpecificAgents.readPersonsCsv(agentsPath);
 
-		for (Path runDir : inputPaths) {
-			log.info("Running on {}", runDir);
-
+		return ParallelTasks.runAll(inputPaths, threads, runDir -> {
 			String populationFile = globFile(runDir, "*output_plans.xml.gz").toString();
-			Population population = PopulationUtils.readPopulation(populationFile);
-
-			Set<Person> filteredPersons = new HashSet<>();
+			String outPath = populationFile.split(".xml.gz")[0] + "_" + suffix + "_filtered.xml.gz";
 
-			population.getPersons().values().stream()
-				.filter(p -> !agentSet.contains(p.getId()))
-				.forEach(filteredPersons::add);
+//			persons are written while they are parsed, only the current person is held in memory
+			StreamingPopulationWriter writer = new StreamingPopulationWriter();
+			writer.startStreaming(outPath);
 
-			filteredPersons.forEach(p -> population.removePerson(p.getId()));
+			StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+			int[] written = {0};
+			reader.addAlgorithm(person -> {
+				if (agentSet.contains(person.getId())) {
+					writer.run(person);
+					written[0]++;
+				}
+			});
+			reader.readFile(populationFile);
+			writer.closeStreaming();
 
-			PopulationUtils.writePopulation(population, populationFile.split(".xml.gz")[0] + "_" + suffix + "_filtered.xml.gz");
-		}
-		return 0;
+			log.info("{} of {} agents written to {}", written[0], agentSet.size(), outPath);
+			return 0;
+		});
 	}
 }
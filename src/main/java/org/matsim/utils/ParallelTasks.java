@@ -0,0 +1,164 @@
+package org.matsim.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent tasks, e.g. the processing of several run directories or the reading of several input tables, on a bounded thread pool.
+ * Every task is logged with its duration when it finishes.
+ * {@link #runAll} keeps going if a task fails and summarizes all failures at the end, {@link #computeAll} stops at the first failure.
+ */
+public final class ParallelTasks {
+	private static final Logger log = LogManager.getLogger(ParallelTasks.class);
+
+	private ParallelTasks() {
+
+	}
+
+	/**
+	 * Apply the task to all inputs (usually run directories) with at most {@code threads} tasks in parallel.
+	 * A failing task does not stop the others.
+	 *
+	 * @return 0 if all inputs were processed successfully, the first non-zero return code otherwise
+	 */
+	public static <T> int runAll(List<T> inputs, int threads, Task<T> task) throws InterruptedException {
+		ExecutorService executor = createExecutor(threads, inputs.size());
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (T input : inputs) {
+				results.add(executor.submit(timed(String.valueOf(input), () -> task.run(input))));
+			}
+
+			Map<T, String> failures = new LinkedHashMap<>();
+			int result = 0;
+			for (int i = 0; i < inputs.size(); i++) {
+				int code;
+				try {
+					code = results.get(i).get();
+				} catch (ExecutionException e) {
+					log.error("Processing of {} failed.", inputs.get(i), e.getCause());
+					failures.put(inputs.get(i), String.valueOf(e.getCause()));
+					code = 1;
+				}
+				if (code != 0) {
+					failures.putIfAbsent(inputs.get(i), "return code " + code);
+					if (result == 0) {
+						result = code;
+					}
+				}
+			}
+
+			if (failures.isEmpty()) {
+				log.info("All {} inputs were processed successfully.", inputs.size());
+			} else {
+				log.error("{} of {} inputs failed:", failures.size(), inputs.size());
+				failures.forEach((input, reason) -> log.error("{}: {}", input, reason));
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run all tasks with at most {@code threads} tasks in parallel and wait for all of them.
+	 * The returned map contains the results under the same names as the given tasks.
+	 * If one task fails, the others are cancelled and its exception is rethrown.
+	 */
+	public static <V> Map<String, V> computeAll(int threads, Map<String, Callable<V>> tasks) throws IOException, InterruptedException {
+		ExecutorService executor = createExecutor(threads, tasks.size());
+		try {
+			List<String> names = new ArrayList<>(tasks.keySet());
+			List<Future<V>> futures = new ArrayList<>(names.size());
+			for (String name : names) {
+				futures.add(executor.submit(timed(name, tasks.get(name))));
+			}
+
+			Map<String, V> results = new LinkedHashMap<>();
+			for (int i = 0; i < names.size(); i++) {
+				results.put(names.get(i), get(futures.get(i), names.get(i)));
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run a single task in the background, e.g. reading the base case while the policy case is processed.
+	 * The result is retrieved with {@link #get(Future, String)}.
+	 */
+	public static <V> Future<V> computeAsync(String name, Callable<V> task) {
+		ExecutorService executor = createExecutor(1, 1);
+		try {
+			return executor.submit(timed(name, task));
+		} finally {
+//			the executor terminates after the submitted task is done
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Wait for the result of a task. IO and runtime exceptions of the task are rethrown as they are.
+	 */
+	public static <V> V get(Future<V> future, String name) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException io) {
+				throw io;
+			} else if (cause instanceof UncheckedIOException io) {
+				throw io.getCause();
+			} else if (cause instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new IllegalStateException("Task " + name + " failed.", cause);
+		}
+	}
+
+	private static ExecutorService createExecutor(int threads, int tasks) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads has to be at least 1, but is " + threads + "!");
+		}
+		return Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks)));
+	}
+
+	private static <V> Callable<V> timed(String name, Callable<V> task) {
+		return () -> {
+			log.info("Running {}", name);
+			Instant start = Instant.now();
+			V result = task.call();
+			log.info("Finished {} after {} s", name, Duration.between(start, Instant.now()).toMillis() / 1000.);
+			return result;
+		};
+	}
+
+	/**
+	 * Processing of a single input, usually a run directory.
+	 */
+	@FunctionalInterface
+	public interface Task<T> {
+
+		/**
+		 * Process the given input.
+		 *
+		 * @return 0 on success
+		 */
+		int run(T input) throws Exception;
+	}
+}
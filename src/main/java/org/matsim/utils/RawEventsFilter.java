@@ -0,0 +1,71 @@
+package org.matsim.utils;
+
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Filters a MATSim events file by event type without parsing the events.
+ * Only the type attribute of each line is compared to the given types, accepted lines are copied unchanged to the output.
+ * This relies on the events writer of MATSim, which writes every event element on a separate line.
+ * Lines without a type attribute (xml header, root element) are always copied.
+ */
+public final class RawEventsFilter {
+
+	private static final String TYPE_ATTRIBUTE = " type=\"";
+
+	private final String[] types;
+	private final boolean include;
+
+	/**
+	 * Create a filter.
+	 *
+	 * @param types   event types to compare with
+	 * @param include if true, only events of the given types are kept, otherwise events of the given types are removed
+	 */
+	public RawEventsFilter(Set<String> types, boolean include) {
+		this.types = types.toArray(String[]::new);
+		this.include = include;
+	}
+
+	/**
+	 * Copy all accepted lines from the input to the output events file.
+	 *
+	 * @return number of written events
+	 */
+	public long filter(String inputFile, String outputFile) throws IOException {
+		long written = 0;
+		try (BufferedReader reader = IOUtils.getBufferedReader(inputFile);
+			 BufferedWriter writer = IOUtils.getBufferedWriter(outputFile)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int typeStart = line.indexOf(TYPE_ATTRIBUTE);
+				if (typeStart >= 0) {
+					if (hasType(line, typeStart + TYPE_ATTRIBUTE.length()) != include) {
+						continue;
+					}
+					written++;
+				}
+				writer.write(line);
+				writer.newLine();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Whether the attribute value starting at the given position equals one of the types. No substrings are created.
+	 */
+	private boolean hasType(String line, int valueStart) {
+		for (String type : types) {
+			int valueEnd = valueStart + type.length();
+			if (line.startsWith(type, valueStart) && valueEnd < line.length() && line.charAt(valueEnd) == '"') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
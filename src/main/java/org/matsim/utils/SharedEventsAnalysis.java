@@ -0,0 +1,26 @@
+package org.matsim.utils;
+
+import org.matsim.core.events.handler.EventHandler;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Analysis of one run, which reads the events together with other analyses. The events file is read only once for all of them,
+ * see {@link EventsMultiplexer}.
+ */
+public interface SharedEventsAnalysis {
+
+	/**
+	 * Create all event handlers of this analysis. Every handler is registered on its own events manager, so that the time spent in
+	 * each handler is reported separately.
+	 */
+	List<EventHandler> createHandlers() throws IOException;
+
+	/**
+	 * Everything which is done after all events have been processed, e.g. reading input tables and writing the results.
+	 *
+	 * @return 0 on success
+	 */
+	int finish() throws Exception;
+}
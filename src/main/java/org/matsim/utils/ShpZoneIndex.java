@@ -0,0 +1,131 @@
+package org.matsim.utils;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Spatial index over the features of a (possibly nested) zone shape file, e.g. the drt service area.
+ * Features are read once and stored as prepared geometries in an STR-tree. A point is assigned to the smallest zone enclosing it.
+ * This reflects the assumption that bigger zones typically enclose the smaller ones completely, hence the smaller zone is the more accurate one.
+ * The index is immutable after construction and can be queried from several threads.
+ */
+public final class ShpZoneIndex {
+	/**
+	 * Zone index returned for points, which are not located in any zone.
+	 */
+	public static final int NO_ZONE = -1;
+
+	private final GeometryFactory geometryFactory = new GeometryFactory();
+	private final STRtree tree = new STRtree();
+	private final String[] zoneIds;
+	private final double[] areas;
+
+	/**
+	 * Create the index. The zone id is taken from the given feature attribute.
+	 */
+	public ShpZoneIndex(List<SimpleFeature> features, String idAttribute) {
+		this.zoneIds = new String[features.size()];
+		this.areas = new double[features.size()];
+
+		PreparedGeometryFactory preparedGeometryFactory = new PreparedGeometryFactory();
+		for (int i = 0; i < features.size(); i++) {
+			SimpleFeature feature = features.get(i);
+			Geometry geometry = (Geometry) feature.getDefaultGeometry();
+			Object id = feature.getAttribute(idAttribute);
+
+			zoneIds[i] = id == null ? feature.getID() : id.toString();
+			areas[i] = geometry.getArea();
+			tree.insert(geometry.getEnvelopeInternal(), new IndexedZone(i, preparedGeometryFactory.create(geometry)));
+		}
+		tree.build();
+	}
+
+	/**
+	 * Dense index (position in feature list) of the smallest zone enclosing the given coordinate or {@link #NO_ZONE}.
+	 * If two enclosing zones have the same area, the one which comes first in the shape file wins.
+	 */
+	public int getZoneIndex(double x, double y) {
+		Point point = geometryFactory.createPoint(new Coordinate(x, y));
+
+		int bestIndex = NO_ZONE;
+		for (Object o : tree.query(new Envelope(x, x, y, y))) {
+			IndexedZone zone = (IndexedZone) o;
+			if ((bestIndex == NO_ZONE || areas[zone.index] < areas[bestIndex] || (areas[zone.index] == areas[bestIndex] && zone.index < bestIndex))
+				&& zone.geometry.contains(point)) {
+				bestIndex = zone.index;
+			}
+		}
+		return bestIndex;
+	}
+
+	/**
+	 * Dense indices of all zones enclosing the given coordinate, ordered like {@link #getZoneIndex(double, double)}: smallest zone first,
+	 * zones with the same area in the order of the shape file. The array is empty if no zone encloses the coordinate.
+	 */
+	public int[] getEnclosingZoneIndices(double x, double y) {
+		Point point = geometryFactory.createPoint(new Coordinate(x, y));
+
+		return tree.query(new Envelope(x, x, y, y)).stream()
+			.map(IndexedZone.class::cast)
+			.filter(zone -> zone.geometry.contains(point))
+			.mapToInt(IndexedZone::index)
+			.boxed()
+			.sorted(Comparator.<Integer>comparingDouble(i -> areas[i]).thenComparingInt(i -> i))
+			.mapToInt(Integer::intValue)
+			.toArray();
+	}
+
+	/**
+	 * Id of the smallest zone enclosing the given coordinate or null, if there is none.
+	 */
+	public String getZoneId(double x, double y) {
+		int index = getZoneIndex(x, y);
+		return index == NO_ZONE ? null : zoneIds[index];
+	}
+
+	public String getZoneId(int index) {
+		return zoneIds[index];
+	}
+
+	/**
+	 * Assign zone indices to all given coordinates. The lookup runs in parallel.
+	 */
+	public int[] getZoneIndices(double[] xs, double[] ys) {
+		if (xs.length != ys.length) {
+			throw new IllegalArgumentException("Number of x (" + xs.length + ") and y (" + ys.length + ") coordinates has to be equal!");
+		}
+		int[] result = new int[xs.length];
+		IntStream.range(0, xs.length).parallel().forEach(i -> result[i] = getZoneIndex(xs[i], ys[i]));
+		return result;
+	}
+
+	/**
+	 * Assign zone ids to all given coordinates. The lookup runs in parallel. Coordinates outside of all zones are assigned null.
+	 */
+	public String[] getZoneIds(double[] xs, double[] ys) {
+		int[] indices = getZoneIndices(xs, ys);
+		String[] result = new String[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			result[i] = indices[i] == NO_ZONE ? null : zoneIds[indices[i]];
+		}
+		return result;
+	}
+
+	public int getNumberOfZones() {
+		return zoneIds.length;
+	}
+
+	private record IndexedZone(int index, PreparedGeometry geometry) {
+	}
+}
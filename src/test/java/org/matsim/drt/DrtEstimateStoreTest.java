@@ -0,0 +1,158 @@
+package org.matsim.drt;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.utils.ShpZoneIndex;
+
+import java.util.List;
+
+class DrtEstimateStoreTest {
+	private static final double TYPICAL_WAIT_TIME = 900.;
+	private static final double ALPHA = 1.5;
+	private static final double BETA = 60.;
+
+	private final Network network = NetworkUtils.createNetwork();
+//	the inner zone is enclosed by the outer zone, the last link is outside of both
+	private final Link innerLink = createLink("inner", new Coord(1000, 1000));
+	private final Link outerLink = createLink("outer", new Coord(5000, 5000));
+	private final Link outsideLink = createLink("outside", new Coord(20_000, 20_000));
+
+	private final List<SimpleFeature> features = List.of(
+		createFeature("outer", 10_000, "other", 600., 2.),
+		createFeature("inner", 2000, DrtLinkZoneTable.MAIN_AREA, 300., null));
+
+	@Test
+	void testLinkZones() {
+		DrtLinkZoneTable table = DrtLinkZoneTable.create(network, features);
+
+		Assertions.assertEquals(2, table.getNumberOfZones());
+		Assertions.assertEquals(1, table.getZoneIndex(innerLink.getId().index()));
+		Assertions.assertEquals(0, table.getZoneIndex(outerLink.getId().index()));
+		Assertions.assertEquals(ShpZoneIndex.NO_ZONE, table.getZoneIndex(outsideLink.getId().index()));
+		Assertions.assertEquals(ShpZoneIndex.NO_ZONE, table.getZoneIndex(table.size()));
+
+//		main area and typical wait time consider all enclosing zones
+		Assertions.assertTrue(table.isInMainArea(innerLink));
+		Assertions.assertFalse(table.isInMainArea(outerLink));
+		Assertions.assertFalse(table.isInMainArea(outsideLink));
+		Assertions.assertEquals(300., table.getTypicalWaitTime(innerLink, TYPICAL_WAIT_TIME));
+		Assertions.assertEquals(600., table.getTypicalWaitTime(outerLink, TYPICAL_WAIT_TIME));
+		Assertions.assertEquals(TYPICAL_WAIT_TIME, table.getTypicalWaitTime(outsideLink, TYPICAL_WAIT_TIME));
+	}
+
+	@Test
+	void testLookup() {
+		DrtEstimateStore store = DrtEstimateStore.create(network, features, TYPICAL_WAIT_TIME, ALPHA, BETA);
+
+		Assertions.assertEquals(1, store.getZone(innerLink.getId().index()));
+		Assertions.assertEquals(0, store.getZone(outerLink.getId().index()));
+		Assertions.assertEquals(2, store.getZone(outsideLink.getId().index()));
+
+		Assertions.assertEquals(300., store.estimateWaitTime(innerLink.getId().index()));
+		Assertions.assertEquals(600., store.estimateWaitTime(outerLink.getId().index()));
+		Assertions.assertEquals(TYPICAL_WAIT_TIME, store.estimateWaitTime(outsideLink.getId().index()));
+
+//		the ride time parameters of the smallest origin zone apply to all destinations, the outer zone overrides alpha only
+		int inner = innerLink.getId().index();
+		int outer = outerLink.getId().index();
+		int outside = outsideLink.getId().index();
+		Assertions.assertEquals(ALPHA * 100 + BETA, store.estimateRideDuration(inner, outer, 100));
+		Assertions.assertEquals(2. * 100 + BETA, store.estimateRideDuration(outer, inner, 100));
+		Assertions.assertEquals(2. * 100 + BETA, store.estimateRideDuration(outer, outside, 100));
+		Assertions.assertEquals(ALPHA * 100 + BETA, store.estimateRideDuration(outside, outer, 100));
+	}
+
+	@Test
+	void testRefit() {
+		DrtEstimateStore store = DrtEstimateStore.create(network, features, TYPICAL_WAIT_TIME, ALPHA, BETA);
+		int inner = innerLink.getId().index();
+		int outer = outerLink.getId().index();
+		int outside = outsideLink.getId().index();
+
+//		enough legs for an own fit of the pairs inner -> inner and inner -> outer, which share the direct ride times and differ in beta only.
+//		the fit of the inner origin zone and the fit over all legs are therefore ride time = 1.2 * direct ride time + 60
+		int pairLegs = DrtEstimateStore.MIN_SAMPLES + 10;
+		int n = 2 * pairLegs + 10;
+		int[] fromLinks = new int[n];
+		int[] toLinks = new int[n];
+		double[] waitTimes = new double[n];
+		double[] directRideTimes = new double[n];
+		double[] rideTimes = new double[n];
+		for (int i = 0; i < n; i++) {
+			boolean innerOrigin = i < 2 * pairLegs;
+			fromLinks[i] = innerOrigin ? inner : outer;
+			toLinks[i] = i < pairLegs || !innerOrigin ? inner : outer;
+			waitTimes[i] = innerOrigin ? 100. + (i % 2 == 0 ? -10 : 10) : 50.;
+			directRideTimes[i] = 100. + (i % pairLegs) * 10;
+			double beta = i < pairLegs ? 30. : innerOrigin ? 90. : 60.;
+			rideTimes[i] = 1.2 * directRideTimes[i] + beta;
+		}
+
+		Assertions.assertEquals(2, store.refit(fromLinks, toLinks, waitTimes, directRideTimes, rideTimes));
+
+		Assertions.assertEquals(100., store.estimateWaitTime(inner), 1e-6);
+//		too few legs for an own wait time, the zone keeps the typical wait time
+		Assertions.assertEquals(600., store.estimateWaitTime(outer));
+
+		Assertions.assertEquals(1.2 * 100 + 30., store.estimateRideDuration(inner, inner, 100), 1e-6);
+		Assertions.assertEquals(1.2 * 100 + 90., store.estimateRideDuration(inner, outer, 100), 1e-6);
+//		pairs with too few legs fall back to the fit of their origin zone, or the fit over all legs if the origin zone has too few legs as well
+		Assertions.assertEquals(1.2 * 100 + 60., store.estimateRideDuration(inner, outside, 100), 1e-6);
+		Assertions.assertEquals(1.2 * 100 + 60., store.estimateRideDuration(outer, inner, 100), 1e-6);
+		Assertions.assertEquals(1.2 * 100 + 60., store.estimateRideDuration(outside, inner, 100), 1e-6);
+
+//		ride times shorter than the direct ride times do not give a sensible fit, the previous estimates are kept
+		for (int i = 0; i < n; i++) {
+			rideTimes[i] = 0.5 * directRideTimes[i];
+		}
+		Assertions.assertEquals(0, store.refit(fromLinks, toLinks, waitTimes, directRideTimes, rideTimes));
+		Assertions.assertEquals(100., store.estimateWaitTime(inner), 1e-6);
+		Assertions.assertEquals(1.2 * 100 + 30., store.estimateRideDuration(inner, inner, 100), 1e-6);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> store.refit(fromLinks, toLinks, new double[1], directRideTimes, rideTimes));
+	}
+
+	private Link createLink(String id, Coord toCoord) {
+		Node from = NetworkUtils.createAndAddNode(network, Id.createNodeId(id + "_from"), new Coord(toCoord.getX() - 100, toCoord.getY()));
+		Node to = NetworkUtils.createAndAddNode(network, Id.createNodeId(id + "_to"), toCoord);
+		return NetworkUtils.createAndAddLink(network, Id.createLinkId(id), from, to, 100., 10., 1000., 1.);
+	}
+
+	/**
+	 * Square zone with its lower left corner at the origin.
+	 */
+	private static SimpleFeature createFeature(String id, double size, String areaType, Double typicalWaitTime, Double rideAlpha) {
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("zones");
+		typeBuilder.add("the_geom", Polygon.class);
+		typeBuilder.add("id", String.class);
+		typeBuilder.add(DrtLinkZoneTable.AREA_TYPE, String.class);
+		typeBuilder.add(DrtLinkZoneTable.TYP_WT, Double.class);
+		typeBuilder.add(DrtEstimateStore.RIDE_TIME_ALPHA, Double.class);
+		SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+		Polygon polygon = new GeometryFactory().createPolygon(new Coordinate[]{
+			new Coordinate(0, 0), new Coordinate(size, 0), new Coordinate(size, size), new Coordinate(0, size), new Coordinate(0, 0)});
+
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+		builder.add(polygon);
+		builder.add(id);
+		builder.add(areaType);
+		builder.add(typicalWaitTime);
+		builder.add(rideAlpha);
+		return builder.buildFeature(id);
+	}
+}
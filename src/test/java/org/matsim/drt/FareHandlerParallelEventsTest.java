@@ -0,0 +1,156 @@
+package org.matsim.drt;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.handler.PersonMoneyEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.contrib.vsp.pt.fare.PtFareCalculator;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.pt.PtConstants;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.utils.EventsTestUtils;
+import org.matsim.utils.ParallelTasks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+
+class FareHandlerParallelEventsTest {
+	private static final int PERSONS = 500;
+	private static final int TRIPS = 6;
+
+	@RegisterExtension
+	private final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	void testSameMoneyEventsWithParallelEventsManager() throws IOException {
+		Path eventsFile = Path.of(utils.getOutputDirectory(), "events.xml.gz");
+		EventsTestUtils.writeEvents(eventsFile, manager -> createEvents().forEach(manager::processEvent));
+
+		List<String> synchronous = replay(eventsFile, EventsUtils.createEventsManager());
+		List<String> parallel = replay(eventsFile, EventsUtils.createParallelEventsManager());
+
+		Assertions.assertFalse(synchronous.isEmpty());
+		Assertions.assertTrue(synchronous.stream().anyMatch(e -> e.contains(PtAndDrtFareUpperBoundHandler.PT_REFUND)));
+		Assertions.assertEquals(synchronous, parallel);
+	}
+
+	@Test
+	void testSameMoneyEventsWithConcurrentHandleEvent() throws Exception {
+		List<ActivityStartEvent> events = createEvents();
+
+		List<String> sequential = handleConcurrently(events, 1);
+
+		Assertions.assertEquals(PERSONS * TRIPS, sequential.size());
+		Assertions.assertEquals(sequential, handleConcurrently(events, 8));
+	}
+
+	/**
+	 * Create pt and drt trips of many persons, trip after trip, so that the activities of the persons are interleaved.
+	 */
+	private static List<ActivityStartEvent> createEvents() {
+		List<ActivityStartEvent> events = new ArrayList<>();
+		SplittableRandom rnd = new SplittableRandom(1);
+		Id<Link> linkId = Id.createLinkId("link");
+		for (int trip = 0; trip < TRIPS; trip++) {
+			for (int i = 0; i < PERSONS; i++) {
+				Id<Person> personId = Id.createPersonId("person_" + i);
+				double time = trip * 3600. + i;
+				int stages = 1 + rnd.nextInt(3);
+				for (int s = 0; s < stages; s++) {
+					String type = rnd.nextInt(4) == 0 ? ChainedPtAndDrtFareHandler.DRT_INTERACTION : PtConstants.TRANSIT_ACTIVITY_TYPE;
+					events.add(new ActivityStartEvent(time + s, personId, linkId, null, type, new Coord(rnd.nextInt(20) * 1000, rnd.nextInt(20) * 1000)));
+				}
+				events.add(new ActivityStartEvent(time + stages, personId, linkId, null, "work", new Coord(0, 0)));
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Call {@link ChainedPtAndDrtFareHandler#handleEvent} of one handler from several threads. The persons are split between the threads,
+	 * the events of every person are handled in their original order. Returns the money events in a canonical order.
+	 */
+	private static List<String> handleConcurrently(List<ActivityStartEvent> events, int threads) throws Exception {
+		List<String> moneyEvents = Collections.synchronizedList(new ArrayList<>());
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((PersonMoneyEventHandler) event -> moneyEvents.add(event.getPersonId() + "," + event.getTime() + "," + event.getAmount()));
+		manager.initProcessing();
+
+		ChainedPtAndDrtFareHandler fareHandler = new ChainedPtAndDrtFareHandler(manager, createFareCalculator());
+
+		List<List<ActivityStartEvent>> partitions = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		for (ActivityStartEvent event : events) {
+			partitions.get(event.getPersonId().index() % threads).add(event);
+		}
+
+		Map<String, Callable<Integer>> tasks = new LinkedHashMap<>();
+		for (int i = 0; i < threads; i++) {
+			List<ActivityStartEvent> partition = partitions.get(i);
+			tasks.put("partition " + i, () -> {
+				partition.forEach(fareHandler::handleEvent);
+				return partition.size();
+			});
+		}
+		ParallelTasks.computeAll(threads, tasks);
+		manager.finishProcessing();
+
+		List<String> sorted = new ArrayList<>(moneyEvents);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static PtFareCalculator createFareCalculator() {
+		return (from, to) -> Optional.of(new PtFareCalculator.FareResult(1. + CoordUtils.calcEuclideanDistance(from, to) / 10_000, TransportMode.pt));
+	}
+
+	/**
+	 * Replay the events through the given manager with both fare handlers and return the money events in a canonical order.
+	 */
+	private static List<String> replay(Path eventsFile, EventsManager manager) throws IOException {
+		List<String> moneyEvents = Collections.synchronizedList(new ArrayList<>());
+		PersonMoneyEventHandler collector = event -> moneyEvents.add(event.getPersonId() + "," + event.getTime() + "," + event.getAmount() + "," + event.getPurpose());
+
+//		refunds are issued after the mobsim, when the events of the manager are already processed
+		EventsManager refundEvents = EventsUtils.createEventsManager();
+		refundEvents.addHandler(collector);
+
+		ChainedPtAndDrtFareHandler fareHandler = new ChainedPtAndDrtFareHandler(manager, createFareCalculator());
+		QSimConfigGroup qSimConfigGroup = new QSimConfigGroup();
+		qSimConfigGroup.setEndTime(TRIPS * 3600.);
+		PtAndDrtFareUpperBoundHandler upperBoundHandler = new PtAndDrtFareUpperBoundHandler(1.5, refundEvents, qSimConfigGroup);
+
+		manager.addHandler(fareHandler);
+		manager.addHandler(upperBoundHandler);
+		manager.addHandler(collector);
+
+		EventsTestUtils.readEvents(manager, EventsTestUtils.xml(eventsFile));
+
+		refundEvents.initProcessing();
+		upperBoundHandler.notifyAfterMobsim(null);
+		refundEvents.finishProcessing();
+
+		List<String> sorted = new ArrayList<>(moneyEvents);
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,107 @@
+package org.matsim.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+
+class BinaryEventsReaderTest {
+	private static final int PERSONS = 20;
+
+	@RegisterExtension
+	private final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	void testReplayEqualsXmlEvents() throws IOException {
+		Path eventsFile = writeEvents();
+		List<String> expected = readXml(eventsFile);
+		Assertions.assertEquals(PERSONS * 15, expected.size());
+
+		for (String name : List.of("output_events.bin", "output_events.bin.gz")) {
+			Path binaryFile = eventsFile.resolveSibling(name);
+
+//			small row groups, so that events types and strings are spread over many of them
+			BinaryEventsWriter writer = new BinaryEventsWriter(binaryFile, 7);
+			EventsManager manager = EventsUtils.createEventsManager();
+			manager.addHandler(writer);
+			EventsTestUtils.readEvents(manager, EventsTestUtils.xml(eventsFile));
+			writer.closeFile();
+			Assertions.assertEquals(expected.size(), writer.getNumberOfEvents());
+
+			Assertions.assertEquals(expected, readBinary(binaryFile));
+		}
+	}
+
+	/**
+	 * Write events of all typed event types of the reader, and a generic event with a numeric, a non-canonical numeric and a long attribute.
+	 */
+	private Path writeEvents() {
+		Path eventsFile = Path.of(utils.getOutputDirectory(), "output_events.xml.gz");
+
+		EventsTestUtils.writeEvents(eventsFile, manager -> {
+			Id<Link> linkId = Id.createLinkId("link");
+			Id<TransitStopFacility> stopId = Id.create("stop", TransitStopFacility.class);
+			String longValue = "x".repeat(70_000);
+			for (int i = 0; i < PERSONS; i++) {
+				Id<Person> personId = Id.createPersonId("person_" + i);
+				Id<Vehicle> vehicleId = Id.createVehicleId("vehicle_" + i);
+				double time = i * 60.;
+				manager.processEvent(new ActivityEndEvent(time, personId, linkId, null, "home", new Coord(i * 0.1, 2.)));
+				manager.processEvent(new PersonDepartureEvent(time, personId, linkId, TransportMode.car, TransportMode.car));
+				manager.processEvent(new PersonEntersVehicleEvent(time, personId, vehicleId));
+				manager.processEvent(new VehicleEntersTrafficEvent(time, personId, linkId, vehicleId, TransportMode.car, 1.0));
+				manager.processEvent(new LinkLeaveEvent(time + 1, vehicleId, linkId));
+				manager.processEvent(new LinkEnterEvent(time + 1, vehicleId, linkId));
+				manager.processEvent(new VehicleArrivesAtFacilityEvent(time + 2, vehicleId, stopId, i));
+				manager.processEvent(new VehicleDepartsAtFacilityEvent(time + 3, vehicleId, stopId, 0.));
+				manager.processEvent(new VehicleLeavesTrafficEvent(time + 4, personId, linkId, vehicleId, TransportMode.car, 0.5));
+				manager.processEvent(new PersonArrivalEvent(time + 4, personId, linkId, TransportMode.car));
+				manager.processEvent(new TeleportationArrivalEvent(time + 5, personId, 1234.5 + i, TransportMode.walk));
+				manager.processEvent(new PersonMoneyEvent(time + 5, personId, -2.5, "pt fare", "operator", personId.toString()));
+				manager.processEvent(new PersonScoreEvent(time + 5, personId, 0.25 * i, "bonus"));
+
+				GenericEvent generic = new GenericEvent("custom", time + 6);
+				generic.getAttributes().put("person", personId.toString());
+				generic.getAttributes().put("distance", Double.toString(i * 1.5));
+				generic.getAttributes().put("count", Integer.toString(i));
+				generic.getAttributes().put("long", i == 0 ? longValue : "short");
+				manager.processEvent(generic);
+				manager.processEvent(new PersonStuckEvent(time + 7, personId, linkId, TransportMode.car));
+			}
+		});
+		return eventsFile;
+	}
+
+	private static List<String> readXml(Path eventsFile) throws IOException {
+		return EventsTestUtils.collectEvents(EventsTestUtils.xml(eventsFile), BinaryEventsReaderTest::describe);
+	}
+
+	private static List<String> readBinary(Path binaryFile) throws IOException {
+		return EventsTestUtils.collectEvents(manager -> new BinaryEventsReader(manager).readFile(binaryFile), BinaryEventsReaderTest::describe);
+	}
+
+	/**
+	 * Class and attributes of the event, so that typed and generic events with the same attributes are distinguished.
+	 */
+	private static String describe(Event event) {
+		return event.getClass().getSimpleName() + (event instanceof HasPersonId) + new TreeMap<>(event.getAttributes());
+	}
+}
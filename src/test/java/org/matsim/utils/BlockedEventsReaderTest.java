@@ -0,0 +1,117 @@
+package org.matsim.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+class BlockedEventsReaderTest {
+	private static final int PERSONS = 50;
+	private static final int HOURS = 24;
+
+	@RegisterExtension
+	private final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Path eventsFile = writeEvents();
+		Path blocksFile = convert(eventsFile, 100);
+
+		List<Map<String, String>> expected = readAll(eventsFile);
+		Assertions.assertEquals(PERSONS * HOURS * 3, expected.size());
+		Assertions.assertEquals(expected, read(blocksFile, reader -> {
+		}));
+
+//		the blocked file is still a valid events file
+		Assertions.assertEquals(expected, readAll(blocksFile));
+	}
+
+	@Test
+	void testTimeWindow() throws IOException {
+		Path blocksFile = convert(writeEvents(), 100);
+
+		List<Map<String, String>> expected = readAll(blocksFile).stream()
+			.filter(e -> Double.parseDouble(e.get("time")) >= 6 * 3600. && Double.parseDouble(e.get("time")) <= 9 * 3600.)
+			.toList();
+		Assertions.assertFalse(expected.isEmpty());
+		Assertions.assertEquals(expected, read(blocksFile, reader -> reader.timeWindow(6 * 3600., 9 * 3600.)));
+	}
+
+	@Test
+	void testTypes() throws IOException {
+		Path blocksFile = convert(writeEvents(), 100);
+
+		List<Map<String, String>> expected = readAll(blocksFile).stream()
+			.filter(e -> e.get("type").equals(PersonMoneyEvent.EVENT_TYPE))
+			.toList();
+		Assertions.assertEquals(PERSONS * HOURS, expected.size());
+		Assertions.assertEquals(expected, read(blocksFile, reader -> reader.types(Set.of(PersonMoneyEvent.EVENT_TYPE))));
+		Assertions.assertTrue(read(blocksFile, reader -> reader.types(Set.of("unknown"))).isEmpty());
+	}
+
+	@Test
+	void testParallelReadAheadKeepsOrder() throws IOException {
+//		many more small blocks than are decompressed ahead of the parser
+		Path blocksFile = convert(writeEvents(), 3);
+
+		List<Map<String, String>> expected = readAll(blocksFile);
+		Assertions.assertEquals(expected, read(blocksFile, reader -> reader.threads(1)));
+		Assertions.assertEquals(expected, read(blocksFile, reader -> reader.threads(8)));
+	}
+
+	/**
+	 * Write departures, activity starts and money events of several persons for every hour of the day.
+	 */
+	private Path writeEvents() {
+		Path eventsFile = Path.of(utils.getOutputDirectory(), "output_events.xml.gz");
+
+		EventsTestUtils.writeEvents(eventsFile, manager -> {
+			Id<Link> linkId = Id.createLinkId("link");
+			for (int hour = 0; hour < HOURS; hour++) {
+				for (int i = 0; i < PERSONS; i++) {
+					Id<Person> personId = Id.createPersonId("person_" + i);
+					double time = hour * 3600. + i * 10;
+					manager.processEvent(new PersonDepartureEvent(time, personId, linkId, TransportMode.pt, TransportMode.pt));
+					manager.processEvent(new ActivityStartEvent(time + 5, personId, linkId, null, "work", new Coord(i, hour)));
+					manager.processEvent(new PersonMoneyEvent(time + 5, personId, -1. * i, "pt fare", "operator", personId.toString()));
+				}
+			}
+		});
+		return eventsFile;
+	}
+
+	private Path convert(Path eventsFile, int blockSize) throws IOException {
+		Path blocksFile = eventsFile.resolveSibling("output_events_blocks.xml.gz");
+		int blocks = ConvertEventsToBlocks.convert(eventsFile, blocksFile, blockSize);
+		Assertions.assertEquals((PERSONS * HOURS * 3 + blockSize - 1) / blockSize, blocks);
+		return blocksFile;
+	}
+
+	private static List<Map<String, String>> readAll(Path eventsFile) throws IOException {
+		return EventsTestUtils.collectEvents(EventsTestUtils.xml(eventsFile), Event::getAttributes);
+	}
+
+	private static List<Map<String, String>> read(Path blocksFile, Consumer<BlockedEventsReader> configure) throws IOException {
+		return EventsTestUtils.collectEvents(manager -> {
+			BlockedEventsReader reader = new BlockedEventsReader(manager);
+			configure.accept(reader);
+			reader.readFile(blocksFile);
+		}, Event::getAttributes);
+	}
+}
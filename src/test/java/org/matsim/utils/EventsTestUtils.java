@@ -0,0 +1,77 @@
+package org.matsim.utils;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Writing and reading back events files in tests of the events readers and handlers.
+ */
+public final class EventsTestUtils {
+
+	private EventsTestUtils() {
+	}
+
+	/**
+	 * Write the events, which the given consumer passes to the manager, to an xml events file.
+	 */
+	public static void writeEvents(Path eventsFile, Consumer<EventsManager> events) {
+		EventsManager manager = EventsUtils.createEventsManager();
+		EventWriterXML writer = new EventWriterXML(eventsFile.toString());
+		manager.addHandler(writer);
+		manager.initProcessing();
+		events.accept(manager);
+		manager.finishProcessing();
+		writer.closeFile();
+	}
+
+	/**
+	 * Read the events of the source into the given manager, which already has all its handlers.
+	 */
+	public static void readEvents(EventsManager manager, EventsSource source) throws IOException {
+		manager.initProcessing();
+		source.read(manager);
+		manager.finishProcessing();
+	}
+
+	/**
+	 * Read the events of the source and collect them in their order, converted by the mapper.
+	 */
+	public static <T> List<T> collectEvents(EventsSource source, Function<Event, T> mapper) throws IOException {
+		List<T> events = Collections.synchronizedList(new ArrayList<>());
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) event -> events.add(mapper.apply(event)));
+		readEvents(manager, source);
+		return events;
+	}
+
+	/**
+	 * Source reading an events file with the {@link MatsimEventsReader}.
+	 */
+	public static EventsSource xml(Path eventsFile) {
+		return manager -> new MatsimEventsReader(manager).readFile(eventsFile.toString());
+	}
+
+	/**
+	 * Passes the events of a file to the manager, e.g. with one of the readers of this package.
+	 */
+	@FunctionalInterface
+	public interface EventsSource {
+
+		/**
+		 * Read all events into the manager, which is initialized before and finished after.
+		 */
+		void read(EventsManager manager) throws IOException;
+	}
+}